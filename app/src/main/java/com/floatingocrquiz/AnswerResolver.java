@@ -0,0 +1,116 @@
+package com.floatingocrquiz;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 答案解析工具
+ * 在导入题目时把答案文本解析为正确选项的位掩码，并判断每个选项的真假倾向，
+ * 查询时直接读取位信息，不再逐个选项重复匹配"正确/对/√"等文本。
+ */
+public final class AnswerResolver {
+
+    // 位掩码最多支持的选项数量
+    public static final int MAX_OPTIONS = 31;
+
+    // 表示"正确"的选项内容（包含即可）
+    private static final String[] TRUE_MARKERS = {
+            "正确", "对", "真", "是", "√", "✓", "✔", "✅", "🌕"
+    };
+    // 表示"正确"的选项内容（需完全相同，忽略大小写）
+    private static final String[] TRUE_EXACT = {"t", "yes", "y"};
+
+    // 表示"错误"的选项内容（包含即可）
+    private static final String[] FALSE_MARKERS = {
+            "错误", "错", "假", "否", "×", "✗", "✕", "✖", "❌", "🌑"
+    };
+    // 表示"错误"的选项内容（需完全相同，忽略大小写）
+    private static final String[] FALSE_EXACT = {"f", "no", "n"};
+
+    private AnswerResolver() {
+    }
+
+    /**
+     * 解析题目答案，填充正确选项掩码和选项真假倾向掩码
+     * @param question 题目对象
+     */
+    public static void resolve(QuestionBankHelper.Question question) {
+        question.truePolarityMask = polarityMask(question.options, true);
+        question.correctMask = correctMask(question.options, question.answer);
+    }
+
+    /**
+     * 计算正确选项的位掩码，第i位表示第i个选项（A=0）是否为正确答案
+     * 答案为TRUE/FALSE时按选项内容的真假倾向判断，否则按答案中的选项字母判断
+     */
+    public static int correctMask(List<String> options, String answer) {
+        if (options == null || options.isEmpty() || answer == null) {
+            return 0;
+        }
+
+        if (answer.equalsIgnoreCase("TRUE")) {
+            return polarityMask(options, true);
+        }
+        if (answer.equalsIgnoreCase("FALSE")) {
+            return polarityMask(options, false);
+        }
+
+        int mask = 0;
+        int count = Math.min(options.size(), MAX_OPTIONS);
+        for (int i = 0; i < count; i++) {
+            if (answer.indexOf((char) ('A' + i)) != -1) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 计算选项真假倾向的位掩码
+     * @param options 选项列表
+     * @param truth true表示统计"正确"倾向的选项，false表示统计"错误"倾向的选项
+     */
+    public static int polarityMask(List<String> options, boolean truth) {
+        if (options == null) {
+            return 0;
+        }
+
+        int mask = 0;
+        int count = Math.min(options.size(), MAX_OPTIONS);
+        for (int i = 0; i < count; i++) {
+            if (hasPolarity(options.get(i), truth)) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 判断选项内容是否表示"正确"（truth=true）或"错误"（truth=false）
+     */
+    public static boolean hasPolarity(String option, boolean truth) {
+        if (option == null) {
+            return false;
+        }
+
+        String cleaned = option.replaceAll("\\s+", " ").trim().toLowerCase(Locale.ROOT);
+        for (String marker : truth ? TRUE_MARKERS : FALSE_MARKERS) {
+            if (cleaned.contains(marker)) {
+                return true;
+            }
+        }
+        for (String exact : truth ? TRUE_EXACT : FALSE_EXACT) {
+            if (cleaned.equals(exact)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 判断第index个选项是否在掩码中
+     */
+    public static boolean isSet(int mask, int index) {
+        return index >= 0 && index < MAX_OPTIONS && (mask & (1 << index)) != 0;
+    }
+}
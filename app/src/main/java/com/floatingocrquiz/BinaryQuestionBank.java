@@ -0,0 +1,304 @@
+package com.floatingocrquiz;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 内存映射的二进制题库
+ * 导入完成后把题库写成紧凑的二进制文件，启动时通过FileChannel.map映射，
+ * 读取题目直接解码映射的页面，不需要解析JSON或查询数据库，页面由系统按需载入。
+ * 文件记录写入时数据库的内容修订号和文件内容的CRC32，修订号不一致或校验失败的文件不会被使用。
+ *
+ * 文件格式（大端序）：
+ * 文件头：魔数、版本、内容修订号、题目数量、数据区偏移、文件头之后全部内容的CRC32
+ * 记录表：每道题目一条定长记录（ID、题型、正确选项位掩码、正确倾向位掩码、数据偏移），按ID升序
+ * 数据区：每道题目的题干、答案、类别、归一化题干和选项，字符串为"字节长度+UTF-8字节"
+ */
+public final class BinaryQuestionBank {
+
+    // "OCQB"
+    private static final int MAGIC = 0x4F435142;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    // 文件头中CRC32的位置
+    private static final int CRC_OFFSET = 20;
+    private static final int RECORD_SIZE = 20;
+    // 选项为null时记录的选项数量
+    private static final int NO_OPTIONS = -1;
+
+    private static final QuestionBankHelper.QuestionType[] TYPES = QuestionBankHelper.QuestionType.values();
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+
+    private BinaryQuestionBank(MappedByteBuffer buffer, int count) {
+        this.buffer = buffer;
+        this.count = count;
+    }
+
+    /**
+     * 把题目写成二进制题库文件，先写入临时文件并同步到磁盘再替换，写入失败时不影响原文件
+     * @param file 目标文件
+     * @param questions 题库中的全部题目
+     * @param contentRevision 读取题目前的数据库内容修订号
+     * @throws IOException 写入失败
+     */
+    public static void write(File file, List<QuestionBankHelper.Question> questions, int contentRevision)
+            throws IOException {
+        List<QuestionBankHelper.Question> sorted = new ArrayList<>(questions);
+        Collections.sort(sorted, (a, b) -> Integer.compare(a.id, b.id));
+
+        int count = sorted.size();
+        int dataOffset = HEADER_SIZE + count * RECORD_SIZE;
+        ByteBuffer table = ByteBuffer.allocate(dataOffset);
+        // CRC32在全部内容写完后回填
+        table.putInt(MAGIC).putInt(VERSION).putInt(contentRevision).putInt(count).putInt(dataOffset).putInt(0);
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            // 先写数据区，记录表在数据写完、偏移确定后写回文件开头
+            channel.position(dataOffset);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            for (QuestionBankHelper.Question question : sorted) {
+                table.putInt(question.id)
+                        .putInt(question.type == null ? -1 : question.type.ordinal())
+                        .putInt(question.correctMask)
+                        .putInt(question.truePolarityMask)
+                        .putInt(dataOffset + out.size());
+                writeString(out, question.question);
+                writeString(out, question.answer);
+                writeString(out, question.category);
+                writeString(out, TextNormalizer.normalize(question.question));
+                if (question.options == null) {
+                    out.writeInt(NO_OPTIONS);
+                } else {
+                    out.writeInt(question.options.size());
+                    for (String option : question.options) {
+                        writeString(out, option);
+                    }
+                }
+            }
+            out.flush();
+
+            table.flip();
+            long position = 0;
+            while (table.hasRemaining()) {
+                position += channel.write(table, position);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, channel.size() - HEADER_SIZE));
+            ByteBuffer crcBytes = ByteBuffer.allocate(4).putInt(0, (int) crc.getValue());
+            while (crcBytes.hasRemaining()) {
+                channel.write(crcBytes, CRC_OFFSET + crcBytes.position());
+            }
+            // 确保替换后的文件内容完整，避免断电后留下不完整的题库文件
+            raf.getFD().sync();
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("无法替换二进制题库文件: " + file.getPath());
+        }
+    }
+
+    /**
+     * 映射二进制题库文件
+     * @param file 题库文件
+     * @param contentRevision 当前数据库内容修订号
+     * @return 映射后的题库；文件的版本或内容修订号与当前不一致时返回null
+     * @throws IOException 读取失败、校验和不符，或文件头、记录表与格式不符
+     */
+    public static BinaryQuestionBank open(File file, int contentRevision) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("二进制题库文件大小无效: " + size);
+            }
+            // 映射在通道关闭后仍然有效
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("二进制题库文件格式不符");
+            }
+            if (buffer.getInt(4) != VERSION || buffer.getInt(8) != contentRevision) {
+                return null;
+            }
+            buffer.position(HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice());
+            buffer.position(0);
+            if ((int) crc.getValue() != buffer.getInt(CRC_OFFSET)) {
+                throw new IOException("二进制题库校验和不符");
+            }
+            int count = buffer.getInt(12);
+            int dataOffset = buffer.getInt(16);
+            if (count < 0 || dataOffset != HEADER_SIZE + (long) count * RECORD_SIZE || dataOffset > size) {
+                throw new IOException("二进制题库记录表无效");
+            }
+            for (int ordinal = 0; ordinal < count; ordinal++) {
+                int entryOffset = buffer.getInt(recordOffset(ordinal) + 16);
+                if (entryOffset < dataOffset || entryOffset >= size) {
+                    throw new IOException("二进制题库数据偏移无效");
+                }
+            }
+            return new BinaryQuestionBank(buffer, count);
+        }
+    }
+
+    /**
+     * 题目数量
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 根据ID读取题目
+     * @return 题目对象，不存在返回null
+     */
+    public QuestionBankHelper.Question findById(int id) {
+        int ordinal = ordinalOf(id);
+        return ordinal < 0 ? null : get(ordinal);
+    }
+
+    /**
+     * 根据ID列表读取题目
+     * @param ids 题目ID列表
+     * @return 题目列表，顺序与传入的ID顺序一致，不存在的ID会被忽略
+     */
+    public List<QuestionBankHelper.Question> getByIds(List<Integer> ids) {
+        List<QuestionBankHelper.Question> questions = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            QuestionBankHelper.Question question = findById(id);
+            if (question != null) {
+                questions.add(question);
+            }
+        }
+        return questions;
+    }
+
+    /**
+     * 读取全部题目（按ID升序）
+     */
+    public List<QuestionBankHelper.Question> questions() {
+        List<QuestionBankHelper.Question> questions = new ArrayList<>(count);
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            questions.add(get(ordinal));
+        }
+        return questions;
+    }
+
+    /**
+     * 读取写入时预先计算的归一化题干（按ID升序，与questions()一一对应）
+     */
+    public List<String> normalizedStems() {
+        List<String> stems = new ArrayList<>(count);
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            ByteBuffer entry = entryAt(ordinal);
+            // 跳过题干、答案和类别
+            for (int i = 0; i < 3; i++) {
+                skipString(entry);
+            }
+            stems.add(readString(entry));
+        }
+        return stems;
+    }
+
+    /**
+     * 解码第ordinal道题目
+     */
+    private QuestionBankHelper.Question get(int ordinal) {
+        int record = recordOffset(ordinal);
+        QuestionBankHelper.Question question = new QuestionBankHelper.Question();
+        question.id = buffer.getInt(record);
+        int type = buffer.getInt(record + 4);
+        question.type = type >= 0 && type < TYPES.length ? TYPES[type] : null;
+        question.correctMask = buffer.getInt(record + 8);
+        question.truePolarityMask = buffer.getInt(record + 12);
+
+        ByteBuffer entry = entryAt(ordinal);
+        question.question = readString(entry);
+        question.answer = readString(entry);
+        question.category = readString(entry);
+        // 归一化题干只用于构建索引
+        skipString(entry);
+        int optionCount = entry.getInt();
+        if (optionCount != NO_OPTIONS) {
+            List<String> options = new ArrayList<>(optionCount);
+            for (int i = 0; i < optionCount; i++) {
+                options.add(readString(entry));
+            }
+            question.options = options;
+        }
+        return question;
+    }
+
+    /**
+     * 在按ID升序的记录表中二分查找
+     * @return 题目序号，不存在返回-1
+     */
+    private int ordinalOf(int id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = buffer.getInt(recordOffset(mid));
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static int recordOffset(int ordinal) {
+        return HEADER_SIZE + ordinal * RECORD_SIZE;
+    }
+
+    /**
+     * 定位到第ordinal道题目的数据，返回独立的缓冲区视图，多线程读取互不影响
+     */
+    private ByteBuffer entryAt(int ordinal) {
+        ByteBuffer entry = buffer.duplicate();
+        entry.position(buffer.getInt(recordOffset(ordinal) + 16));
+        return entry;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer entry) {
+        byte[] bytes = new byte[entry.getInt()];
+        entry.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer entry) {
+        int length = entry.getInt();
+        entry.position(entry.position() + length);
+    }
+}
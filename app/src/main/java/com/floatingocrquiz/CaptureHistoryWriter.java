@@ -0,0 +1,110 @@
+package com.floatingocrquiz;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 截图查询记录的后台批量写入器
+ * 查询线程只把记录放入内存队列，攒够一批或等待一段时间后由后台线程在一个事务中写入数据库，
+ * 不在查询路径上做任何数据库写入。
+ * 服务停止或内存紧张时调用flush/close立即写入，避免进程被回收时丢失最近的记录。
+ */
+public final class CaptureHistoryWriter {
+    private static final String TAG = "com.floatingocrquiz.CaptureHistoryWriter";
+
+    // 攒够该数量的记录后立即写入
+    private static final int BATCH_SIZE = 20;
+    // 不足一批时最多等待的时间
+    private static final long FLUSH_DELAY_MS = 5000;
+
+    /**
+     * 一次查询的记录
+     */
+    public static final class Record {
+        // 匹配到的题目ID，未匹配到时为-1
+        public final int questionId;
+        public final double score;
+        public final long latencyMillis;
+        // 查询时间（System.currentTimeMillis()）
+        public final long capturedAt;
+
+        Record(int questionId, double score, long latencyMillis, long capturedAt) {
+            this.questionId = questionId;
+            this.score = score;
+            this.latencyMillis = latencyMillis;
+            this.capturedAt = capturedAt;
+        }
+    }
+
+    private final DBHelper dbHelper;
+    // 后台写入线程，首次记录时创建，close后释放，由this保护
+    private ScheduledExecutorService executor;
+    // 待写入的记录，由this保护
+    private List<Record> pending = new ArrayList<>();
+    // 是否已经安排了延迟写入，由this保护
+    private boolean flushScheduled;
+
+    public CaptureHistoryWriter(DBHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * 记录一次查询，立即返回
+     * @param questionId 匹配到的题目ID，未匹配到时传-1
+     * @param score 匹配得分
+     * @param latencyMillis 查询耗时（毫秒）
+     */
+    public void record(int questionId, double score, long latencyMillis) {
+        Record record = new Record(questionId, score, latencyMillis, System.currentTimeMillis());
+        synchronized (this) {
+            pending.add(record);
+            if (executor == null) {
+                executor = Executors.newSingleThreadScheduledExecutor();
+            }
+            if (pending.size() >= BATCH_SIZE) {
+                executor.execute(this::flush);
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * 在当前线程立即写入队列中的记录
+     */
+    public void flush() {
+        List<Record> batch;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        dbHelper.insertCaptureHistory(batch);
+        Log.d(TAG, "写入 " + batch.size() + " 条查询记录");
+    }
+
+    /**
+     * 立即写入队列中的记录并释放后台线程，之后再有记录时重新创建
+     */
+    public void close() {
+        ScheduledExecutorService current;
+        synchronized (this) {
+            current = executor;
+            executor = null;
+        }
+        if (current != null) {
+            // 取消尚未执行的延迟写入，剩余记录由下面的flush写入
+            current.shutdownNow();
+        }
+        flush();
+    }
+}
@@ -5,20 +5,33 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class DBHelper extends SQLiteOpenHelper {
 
     private static final String TAG = "com.floatingocrquiz.DBHelper";
     private static final String DATABASE_NAME = "question_bank.db";
-    private static final int DATABASE_VERSION = 4;
+    private static final int DATABASE_VERSION = 10;
+    // 注意：数据库连接由DBHelper持有，首次访问时打开，直到close()才关闭，各方法不再自行关闭连接。
+    // 使用WAL日志模式，导入写入期间其他线程的检索仍可并发读取
+    // 每个连接缓存的预编译语句数量（SQL文本相同的查询复用已编译的语句）
+    private static final int MAX_SQL_CACHE_SIZE = 50;
 
     // 表名
     public static final String TABLE_QUESTIONS = "questions";
@@ -29,6 +42,93 @@ public class DBHelper extends SQLiteOpenHelper {
     public static final String COLUMN_QUESTION = "question";
     public static final String COLUMN_OPTIONS = "options";
     public static final String COLUMN_ANSWER = "answer";
+    // 导入时预先解析的答案位掩码
+    public static final String COLUMN_CORRECT_MASK = "correct_mask";
+    public static final String COLUMN_TRUE_MASK = "true_mask";
+    // 题目所属类别（如变电安规、线路安规），导入时填充
+    public static final String COLUMN_CATEGORY = "category";
+    // 归一化题干拆分成的二元组文本，作为全文索引的内容
+    public static final String COLUMN_STEM_BIGRAMS = "stem_bigrams";
+    // 题目内容哈希（题型、归一化题干和选项），导入时按此去重，答案不参与计算
+    public static final String COLUMN_CONTENT_HASH = "content_hash";
+    private static final String INDEX_CONTENT_HASH = "idx_questions_content_hash";
+    // 题库文件中的题目ID，增量更新按此定位题目
+    public static final String COLUMN_SOURCE_ID = "source_id";
+    private static final String INDEX_SOURCE_ID = "idx_questions_source_id";
+
+    // 题库元数据表（键值对），记录当前题库版本和内容修订号
+    public static final String TABLE_BANK_META = "bank_meta";
+    private static final String COLUMN_META_KEY = "key";
+    private static final String COLUMN_META_VALUE = "value";
+    private static final String META_BANK_VERSION = "bank_version";
+    // 内容修订号：每次写入题目都在同一事务中加一，只增不减，用于判断由题库生成的缓存文件是否过期
+    private static final String META_CONTENT_REVISION = "content_revision";
+    private static final String CREATE_TABLE_BANK_META = "CREATE TABLE IF NOT EXISTS " + TABLE_BANK_META + "(" +
+            COLUMN_META_KEY + " TEXT PRIMARY KEY, " + COLUMN_META_VALUE + " TEXT NOT NULL);";
+
+    // 截图查询记录表：每次查询匹配到的题目、得分、耗时和时间
+    public static final String TABLE_CAPTURE_HISTORY = "capture_history";
+    private static final String COLUMN_HISTORY_QUESTION_ID = "question_id";
+    private static final String COLUMN_HISTORY_SCORE = "score";
+    private static final String COLUMN_HISTORY_LATENCY = "latency_ms";
+    private static final String COLUMN_HISTORY_CAPTURED_AT = "captured_at";
+    private static final String CREATE_TABLE_CAPTURE_HISTORY = "CREATE TABLE IF NOT EXISTS " + TABLE_CAPTURE_HISTORY + "(" +
+            COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            COLUMN_HISTORY_QUESTION_ID + " INTEGER, " +
+            COLUMN_HISTORY_SCORE + " REAL NOT NULL, " +
+            COLUMN_HISTORY_LATENCY + " INTEGER NOT NULL, " +
+            COLUMN_HISTORY_CAPTURED_AT + " INTEGER NOT NULL);";
+    private static final String CREATE_INDEX_HISTORY_QUESTION_ID = "CREATE INDEX IF NOT EXISTS idx_capture_history_question_id ON " +
+            TABLE_CAPTURE_HISTORY + "(" + COLUMN_HISTORY_QUESTION_ID + ");";
+    private static final String INSERT_CAPTURE_HISTORY_SQL = "INSERT INTO " + TABLE_CAPTURE_HISTORY + " (" +
+            COLUMN_HISTORY_QUESTION_ID + ", " + COLUMN_HISTORY_SCORE + ", " + COLUMN_HISTORY_LATENCY + ", " +
+            COLUMN_HISTORY_CAPTURED_AT + ") VALUES (?, ?, ?, ?)";
+    // 查询记录最多保留的条数，超出后删除最早的记录
+    private static final int MAX_CAPTURE_HISTORY_ROWS = 5000;
+
+    // 题干全文索引（FTS4外部内容表，内容取自题目表的stem_bigrams列）
+    public static final String TABLE_QUESTIONS_FTS = "questions_fts";
+    private static final String CREATE_TABLE_QUESTIONS_FTS = "CREATE VIRTUAL TABLE " + TABLE_QUESTIONS_FTS +
+            " USING fts4(content=\"" + TABLE_QUESTIONS + "\", " + COLUMN_STEM_BIGRAMS + ")";
+    // 保持全文索引与题目表同步的触发器
+    private static final String[] CREATE_FTS_TRIGGERS = {
+            "CREATE TRIGGER questions_fts_bu BEFORE UPDATE ON " + TABLE_QUESTIONS + " BEGIN " +
+                    "DELETE FROM " + TABLE_QUESTIONS_FTS + " WHERE docid = old." + COLUMN_ID + "; END",
+            "CREATE TRIGGER questions_fts_bd BEFORE DELETE ON " + TABLE_QUESTIONS + " BEGIN " +
+                    "DELETE FROM " + TABLE_QUESTIONS_FTS + " WHERE docid = old." + COLUMN_ID + "; END",
+            "CREATE TRIGGER questions_fts_au AFTER UPDATE ON " + TABLE_QUESTIONS + " BEGIN " +
+                    "INSERT INTO " + TABLE_QUESTIONS_FTS + "(docid, " + COLUMN_STEM_BIGRAMS + ") " +
+                    "VALUES (new." + COLUMN_ID + ", new." + COLUMN_STEM_BIGRAMS + "); END",
+            "CREATE TRIGGER questions_fts_ai AFTER INSERT ON " + TABLE_QUESTIONS + " BEGIN " +
+                    "INSERT INTO " + TABLE_QUESTIONS_FTS + "(docid, " + COLUMN_STEM_BIGRAMS + ") " +
+                    "VALUES (new." + COLUMN_ID + ", new." + COLUMN_STEM_BIGRAMS + "); END"
+    };
+
+    // 批量插入使用的预编译语句
+    private static final String INSERT_QUESTION_SQL = "INSERT INTO " + TABLE_QUESTIONS + " (" +
+            COLUMN_TYPE + ", " + COLUMN_QUESTION + ", " + COLUMN_OPTIONS + ", " + COLUMN_ANSWER + ", " +
+            COLUMN_CORRECT_MASK + ", " + COLUMN_TRUE_MASK + ", " + COLUMN_CATEGORY + ", " + COLUMN_STEM_BIGRAMS + ", " +
+            COLUMN_CONTENT_HASH + ", " + COLUMN_SOURCE_ID + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // 导入时查找已有题目返回的列，用于判断内容是否变化
+    private static final String SELECT_EXISTING_COLUMNS = "SELECT " + COLUMN_ID + ", " + COLUMN_QUESTION + ", " +
+            COLUMN_OPTIONS + ", " + COLUMN_ANSWER + ", " + COLUMN_CATEGORY + " FROM " + TABLE_QUESTIONS;
+    // 按题库文件中的题目ID查找已有题目
+    private static final String SELECT_BY_SOURCE_ID_SQL = SELECT_EXISTING_COLUMNS +
+            " WHERE " + COLUMN_SOURCE_ID + " = ? LIMIT 1";
+    // 没有题库ID的题目按内容哈希去重
+    private static final String SELECT_BY_CONTENT_HASH_SQL = SELECT_EXISTING_COLUMNS +
+            " WHERE " + COLUMN_CONTENT_HASH + " = ? LIMIT 1";
+    // 带题库ID的题目只认领内容相同、还没有题库ID的旧题目，不合并不同ID的相同题目
+    private static final String SELECT_UNOWNED_BY_CONTENT_HASH_SQL = SELECT_EXISTING_COLUMNS +
+            " WHERE " + COLUMN_CONTENT_HASH + " = ? AND " + COLUMN_SOURCE_ID + " IS NULL LIMIT 1";
+    private static final String DELETE_BY_SOURCE_ID_SQL = "DELETE FROM " + TABLE_QUESTIONS +
+            " WHERE " + COLUMN_SOURCE_ID + " = ?";
+    // 更新已有题目的内容，保留原ID；未提供题库ID时保留原有的题库ID
+    private static final String UPDATE_QUESTION_SQL = "UPDATE " + TABLE_QUESTIONS + " SET " +
+            COLUMN_TYPE + " = ?, " + COLUMN_QUESTION + " = ?, " + COLUMN_OPTIONS + " = ?, " + COLUMN_ANSWER + " = ?, " +
+            COLUMN_CORRECT_MASK + " = ?, " + COLUMN_TRUE_MASK + " = ?, " + COLUMN_CATEGORY + " = ?, " +
+            COLUMN_STEM_BIGRAMS + " = ?, " + COLUMN_CONTENT_HASH + " = ?, " +
+            COLUMN_SOURCE_ID + " = COALESCE(?, " + COLUMN_SOURCE_ID + ") WHERE " + COLUMN_ID + " = ?";
 
     // 创建表的SQL语句
     private static final String CREATE_TABLE_QUESTIONS = "CREATE TABLE " + TABLE_QUESTIONS + "(" +
@@ -36,11 +136,55 @@ public class DBHelper extends SQLiteOpenHelper {
             COLUMN_TYPE + " TEXT NOT NULL, " +
             COLUMN_QUESTION + " TEXT NOT NULL CHECK(length(question) <= 600), " +
             COLUMN_OPTIONS + " TEXT CHECK(length(options) <= 250), " +
-            COLUMN_ANSWER + " TEXT NOT NULL CHECK(length(answer) <= 1000)" +
+            COLUMN_ANSWER + " TEXT NOT NULL CHECK(length(answer) <= 1000), " +
+            COLUMN_CORRECT_MASK + " INTEGER NOT NULL DEFAULT 0, " +
+            COLUMN_TRUE_MASK + " INTEGER NOT NULL DEFAULT 0, " +
+            COLUMN_CATEGORY + " TEXT NOT NULL DEFAULT '', " +
+            COLUMN_STEM_BIGRAMS + " TEXT NOT NULL DEFAULT '', " +
+            COLUMN_CONTENT_HASH + " TEXT NOT NULL DEFAULT '', " +
+            COLUMN_SOURCE_ID + " INTEGER" +
             ");";
+    private static final String CREATE_INDEX_SOURCE_ID = "CREATE INDEX IF NOT EXISTS " + INDEX_SOURCE_ID +
+            " ON " + TABLE_QUESTIONS + "(" + COLUMN_SOURCE_ID + ");";
+    private static final String CREATE_INDEX_CONTENT_HASH = "CREATE INDEX IF NOT EXISTS " + INDEX_CONTENT_HASH +
+            " ON " + TABLE_QUESTIONS + "(" + COLUMN_CONTENT_HASH + ");";
+
+    // 按ID查询题目，SQL文本固定，由连接的语句缓存复用
+    private static final String SELECT_QUESTION_BY_ID_SQL =
+            "SELECT * FROM " + TABLE_QUESTIONS + " WHERE " + COLUMN_ID + " = ?";
+    private static final String COUNT_QUESTIONS_SQL = "SELECT COUNT(*) FROM " + TABLE_QUESTIONS;
+    // 流式扫描每批读取的行数，按ID分批查询，限制游标窗口的内存占用
+    private static final int SCAN_WINDOW_SIZE = 200;
+    private static final String SCAN_QUESTIONS_SQL = "SELECT * FROM " + TABLE_QUESTIONS +
+            " WHERE " + COLUMN_ID + " > ? ORDER BY " + COLUMN_ID + " LIMIT " + SCAN_WINDOW_SIZE;
+    private static final String SCAN_QUESTIONS_BY_CATEGORY_SQL = "SELECT * FROM " + TABLE_QUESTIONS +
+            " WHERE " + COLUMN_ID + " > ? AND " + COLUMN_CATEGORY + " = ? ORDER BY " + COLUMN_ID +
+            " LIMIT " + SCAN_WINDOW_SIZE;
+
+    // 复用的题目计数语句，首次使用时编译，close()时释放
+    private SQLiteStatement countStatement;
 
     public DBHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        db.setMaxSqlCacheSize(MAX_SQL_CACHE_SIZE);
+    }
+
+    /**
+     * 关闭复用的预编译语句和数据库连接，应用退出时调用
+     */
+    @Override
+    public synchronized void close() {
+        if (countStatement != null) {
+            countStatement.close();
+            countStatement = null;
+        }
+        super.close();
     }
 
     @Override
@@ -49,6 +193,17 @@ public class DBHelper extends SQLiteOpenHelper {
         db.execSQL(CREATE_TABLE_QUESTIONS);
         // 为question字段创建索引，提高模糊搜索效率
         db.execSQL("CREATE INDEX idx_questions_question ON " + TABLE_QUESTIONS + "(" + COLUMN_QUESTION + ");");
+        // 为category字段创建索引，支持按类别筛选
+        db.execSQL("CREATE INDEX idx_questions_category ON " + TABLE_QUESTIONS + "(" + COLUMN_CATEGORY + ");");
+        // 题干全文索引，前导通配符的LIKE无法使用B树索引
+        createFullTextIndex(db);
+        // 内容哈希索引，导入时按内容查找已有题目
+        db.execSQL(CREATE_INDEX_CONTENT_HASH);
+        // 题库ID索引，增量更新时按题库ID定位题目
+        db.execSQL(CREATE_INDEX_SOURCE_ID);
+        db.execSQL(CREATE_TABLE_BANK_META);
+        db.execSQL(CREATE_TABLE_CAPTURE_HISTORY);
+        db.execSQL(CREATE_INDEX_HISTORY_QUESTION_ID);
         Log.d(TAG, "数据库表和索引创建成功");
     }
 
@@ -70,9 +225,336 @@ public class DBHelper extends SQLiteOpenHelper {
             db.execSQL("CREATE INDEX IF NOT EXISTS idx_questions_question ON " + TABLE_QUESTIONS + "(" + COLUMN_QUESTION + ");");
             db.execSQL("CREATE INDEX IF NOT EXISTS idx_questions_type ON " + TABLE_QUESTIONS + "(" + COLUMN_TYPE + ");");
         }
+        if (oldVersion < 5) {
+            // 版本4到版本5的升级操作：添加答案位掩码列，并为已有题目回填
+            db.execSQL("ALTER TABLE " + TABLE_QUESTIONS + " ADD COLUMN " + COLUMN_CORRECT_MASK + " INTEGER NOT NULL DEFAULT 0;");
+            db.execSQL("ALTER TABLE " + TABLE_QUESTIONS + " ADD COLUMN " + COLUMN_TRUE_MASK + " INTEGER NOT NULL DEFAULT 0;");
+            backfillAnswerMasks(db);
+        }
+        if (oldVersion < 6) {
+            // 版本5到版本6的升级操作：添加类别列，根据题干推断已有题目的类别
+            db.execSQL("ALTER TABLE " + TABLE_QUESTIONS + " ADD COLUMN " + COLUMN_CATEGORY + " TEXT NOT NULL DEFAULT '';");
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_questions_category ON " + TABLE_QUESTIONS + "(" + COLUMN_CATEGORY + ");");
+            backfillCategories(db);
+        }
+        if (oldVersion < 7) {
+            // 版本6到版本7的升级操作：添加题干二元组列和FTS4全文索引，回填后重建索引内容
+            db.execSQL("ALTER TABLE " + TABLE_QUESTIONS + " ADD COLUMN " + COLUMN_STEM_BIGRAMS + " TEXT NOT NULL DEFAULT '';");
+            backfillStemBigrams(db);
+            createFullTextIndex(db);
+            db.execSQL("INSERT INTO " + TABLE_QUESTIONS_FTS + "(" + TABLE_QUESTIONS_FTS + ") VALUES('rebuild')");
+        }
+        if (oldVersion < 8) {
+            // 版本7到版本8的升级操作：添加内容哈希列，回填时删除重复导入的题目
+            db.execSQL("ALTER TABLE " + TABLE_QUESTIONS + " ADD COLUMN " + COLUMN_CONTENT_HASH + " TEXT NOT NULL DEFAULT '';");
+            backfillContentHashes(db);
+            db.execSQL(CREATE_INDEX_CONTENT_HASH);
+        }
+        if (oldVersion < 9) {
+            // 版本8到版本9的升级操作：添加题库ID列和题库元数据表，支持按版本增量更新。
+            // 已有题目没有题库ID，重新导入带ID的题库后按内容哈希补齐
+            db.execSQL("ALTER TABLE " + TABLE_QUESTIONS + " ADD COLUMN " + COLUMN_SOURCE_ID + " INTEGER;");
+            db.execSQL(CREATE_INDEX_SOURCE_ID);
+            db.execSQL(CREATE_TABLE_BANK_META);
+        }
+        if (oldVersion < 10) {
+            // 版本9到版本10的升级操作：添加截图查询记录表
+            db.execSQL(CREATE_TABLE_CAPTURE_HISTORY);
+            db.execSQL(CREATE_INDEX_HISTORY_QUESTION_ID);
+        }
         Log.d(TAG, "数据库从版本 " + oldVersion + " 升级到版本 " + newVersion + " 成功");
     }
 
+    /**
+     * 为已有题目回填答案位掩码
+     */
+    private void backfillAnswerMasks(SQLiteDatabase db) {
+        Cursor cursor = null;
+        SQLiteStatement updateStatement = null;
+        try {
+            updateStatement = db.compileStatement("UPDATE " + TABLE_QUESTIONS + " SET " +
+                    COLUMN_CORRECT_MASK + " = ?, " + COLUMN_TRUE_MASK + " = ? WHERE " + COLUMN_ID + " = ?");
+            cursor = db.query(TABLE_QUESTIONS, null, null, null, null, null, null);
+            if (cursor.moveToFirst()) {
+                do {
+                    QuestionBankHelper.Question question = cursorToQuestion(cursor);
+                    AnswerResolver.resolve(question);
+                    updateStatement.bindLong(1, question.correctMask);
+                    updateStatement.bindLong(2, question.truePolarityMask);
+                    updateStatement.bindLong(3, question.id);
+                    updateStatement.executeUpdateDelete();
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            if (updateStatement != null) {
+                updateStatement.close();
+            }
+        }
+    }
+
+    /**
+     * 根据题干为已有题目回填类别
+     */
+    private void backfillCategories(SQLiteDatabase db) {
+        Cursor cursor = null;
+        SQLiteStatement updateStatement = null;
+        try {
+            updateStatement = db.compileStatement("UPDATE " + TABLE_QUESTIONS + " SET " +
+                    COLUMN_CATEGORY + " = ? WHERE " + COLUMN_ID + " = ?");
+            cursor = db.query(TABLE_QUESTIONS, new String[]{COLUMN_ID, COLUMN_QUESTION}, null, null, null, null, null);
+            if (cursor.moveToFirst()) {
+                do {
+                    updateStatement.bindString(1, QuestionBankHelper.inferCategory(cursor.getString(1)));
+                    updateStatement.bindLong(2, cursor.getInt(0));
+                    updateStatement.executeUpdateDelete();
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            if (updateStatement != null) {
+                updateStatement.close();
+            }
+        }
+    }
+
+    /**
+     * 创建题干全文索引及同步触发器
+     */
+    private void createFullTextIndex(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_QUESTIONS_FTS);
+        for (String trigger : CREATE_FTS_TRIGGERS) {
+            db.execSQL(trigger);
+        }
+    }
+
+    /**
+     * 为已有题目回填题干二元组文本
+     */
+    private void backfillStemBigrams(SQLiteDatabase db) {
+        Cursor cursor = null;
+        SQLiteStatement updateStatement = null;
+        try {
+            updateStatement = db.compileStatement("UPDATE " + TABLE_QUESTIONS + " SET " +
+                    COLUMN_STEM_BIGRAMS + " = ? WHERE " + COLUMN_ID + " = ?");
+            cursor = db.query(TABLE_QUESTIONS, new String[]{COLUMN_ID, COLUMN_QUESTION}, null, null, null, null, null);
+            if (cursor.moveToFirst()) {
+                do {
+                    updateStatement.bindString(1, stemBigrams(cursor.getString(1)));
+                    updateStatement.bindLong(2, cursor.getInt(0));
+                    updateStatement.executeUpdateDelete();
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            if (updateStatement != null) {
+                updateStatement.close();
+            }
+        }
+    }
+
+    /**
+     * 为已有题目回填内容哈希，内容相同的题目只保留ID最小的一道
+     */
+    private void backfillContentHashes(SQLiteDatabase db) {
+        Cursor cursor = null;
+        SQLiteStatement updateStatement = null;
+        Set<String> seenHashes = new HashSet<>();
+        List<Integer> duplicateIds = new ArrayList<>();
+        try {
+            updateStatement = db.compileStatement("UPDATE " + TABLE_QUESTIONS + " SET " +
+                    COLUMN_CONTENT_HASH + " = ? WHERE " + COLUMN_ID + " = ?");
+            cursor = db.query(TABLE_QUESTIONS, null, null, null, null, null, COLUMN_ID);
+            if (cursor.moveToFirst()) {
+                do {
+                    QuestionBankHelper.Question question = cursorToQuestion(cursor);
+                    String hash = contentHash(question);
+                    if (!seenHashes.add(hash)) {
+                        duplicateIds.add(question.id);
+                        continue;
+                    }
+                    updateStatement.bindString(1, hash);
+                    updateStatement.bindLong(2, question.id);
+                    updateStatement.executeUpdateDelete();
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            if (updateStatement != null) {
+                updateStatement.close();
+            }
+        }
+        // 游标关闭后再删除，避免删除行影响游标分页
+        for (Integer id : duplicateIds) {
+            db.delete(TABLE_QUESTIONS, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+        }
+        Log.d(TAG, "回填内容哈希，删除 " + duplicateIds.size() + " 道重复题目");
+    }
+
+    /**
+     * 计算题目的内容哈希：题型、归一化题干和按顺序归一化的选项，不包含答案和类别，
+     * 同一道题重新导入时答案有变化也能找到原题目
+     * @return SHA-1的十六进制字符串
+     */
+    static String contentHash(QuestionBankHelper.Question question) {
+        StringBuilder canonical = new StringBuilder();
+        canonical.append(question.type == null ? "" : question.type.name())
+                .append('\u0001').append(TextNormalizer.normalize(question.question));
+        if (question.options != null) {
+            for (String option : question.options) {
+                canonical.append('\u0001').append(TextNormalizer.normalize(option));
+            }
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1是平台必须支持的算法
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 题干的全文索引内容：归一化后拆分为重叠二元组
+     */
+    private static String stemBigrams(String stem) {
+        return TextNormalizer.bigramText(TextNormalizer.normalize(stem));
+    }
+
+    /**
+     * 构建题干包含关键词的查询条件：关键词归一化后不少于两个字符时使用全文索引的短语查询
+     * （连续的重叠二元组等价于子串匹配），否则退回LIKE模糊匹配
+     * @return [查询条件, 参数...]
+     */
+    private static String[] keywordSelection(String keyword, String category) {
+        String normalized = TextNormalizer.normalize(keyword);
+        String selection;
+        String argument;
+        if (normalized.length() >= 2) {
+            selection = COLUMN_ID + " IN (SELECT docid FROM " + TABLE_QUESTIONS_FTS +
+                    " WHERE " + TABLE_QUESTIONS_FTS + " MATCH ?)";
+            argument = "\"" + TextNormalizer.bigramText(normalized) + "\"";
+        } else {
+            // 转义SQL通配符（%和_）和转义符本身，LIKE对ASCII字母默认忽略大小写
+            selection = COLUMN_QUESTION + " LIKE ? ESCAPE '\\'";
+            argument = "%" + keyword.replaceAll("([%_\\\\])", "\\\\$1") + "%";
+        }
+        if (category != null && !category.isEmpty()) {
+            return new String[]{selection + " AND " + COLUMN_CATEGORY + " = ?", argument, category};
+        }
+        return new String[]{selection, argument};
+    }
+
+    /**
+     * 将题目转换为待插入的ContentValues，同时预先解析答案位掩码和类别
+     */
+    private ContentValues toContentValues(QuestionBankHelper.Question question) {
+        prepareForInsert(question);
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_TYPE, question.type.name());
+        values.put(COLUMN_QUESTION, question.question);
+        String options = optionsToJson(question);
+        if (options != null) {
+            values.put(COLUMN_OPTIONS, options);
+        }
+        values.put(COLUMN_ANSWER, question.answer);
+        values.put(COLUMN_CORRECT_MASK, question.correctMask);
+        values.put(COLUMN_TRUE_MASK, question.truePolarityMask);
+        values.put(COLUMN_CATEGORY, question.category);
+        values.put(COLUMN_STEM_BIGRAMS, stemBigrams(question.question));
+        values.put(COLUMN_CONTENT_HASH, contentHash(question));
+        if (question.sourceId != null) {
+            values.put(COLUMN_SOURCE_ID, question.sourceId);
+        }
+        return values;
+    }
+
+    /**
+     * 将题目绑定到INSERT_QUESTION_SQL预编译语句，列顺序与toContentValues一致
+     */
+    private void bindInsert(SQLiteStatement statement, QuestionBankHelper.Question question) {
+        prepareForInsert(question);
+        statement.clearBindings();
+        statement.bindString(1, question.type.name());
+        statement.bindString(2, question.question);
+        String options = optionsToJson(question);
+        if (options != null) {
+            statement.bindString(3, options);
+        } else {
+            statement.bindNull(3);
+        }
+        statement.bindString(4, question.answer);
+        statement.bindLong(5, question.correctMask);
+        statement.bindLong(6, question.truePolarityMask);
+        statement.bindString(7, question.category);
+        statement.bindString(8, stemBigrams(question.question));
+        statement.bindString(9, contentHash(question));
+        if (question.sourceId != null) {
+            statement.bindLong(10, question.sourceId);
+        } else {
+            statement.bindNull(10);
+        }
+    }
+
+    /**
+     * 将题目绑定到UPDATE_QUESTION_SQL预编译语句，题目需已经过prepareForInsert
+     */
+    private void bindUpdate(SQLiteStatement statement, long id, QuestionBankHelper.Question question, String options) {
+        statement.clearBindings();
+        statement.bindString(1, question.type.name());
+        statement.bindString(2, question.question);
+        if (options != null) {
+            statement.bindString(3, options);
+        } else {
+            statement.bindNull(3);
+        }
+        statement.bindString(4, question.answer);
+        statement.bindLong(5, question.correctMask);
+        statement.bindLong(6, question.truePolarityMask);
+        statement.bindString(7, question.category);
+        statement.bindString(8, stemBigrams(question.question));
+        statement.bindString(9, contentHash(question));
+        if (question.sourceId != null) {
+            statement.bindLong(10, question.sourceId);
+        } else {
+            statement.bindNull(10);
+        }
+        statement.bindLong(11, id);
+    }
+
+    /**
+     * 入库前预先解析答案位掩码，未指定类别时根据题干推断
+     */
+    private void prepareForInsert(QuestionBankHelper.Question question) {
+        AnswerResolver.resolve(question);
+        if (question.category == null || question.category.isEmpty()) {
+            question.category = QuestionBankHelper.inferCategory(question.question);
+        }
+    }
+
+    /**
+     * 将选项列表转换为JSON字符串，没有选项时返回null
+     */
+    private static String optionsToJson(QuestionBankHelper.Question question) {
+        if (question.options == null || question.options.isEmpty()) {
+            return null;
+        }
+        return new JSONArray(question.options).toString();
+    }
+
     /**
      * 插入单条题目
      * @param question 题目对象
@@ -82,86 +564,338 @@ public class DBHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = null;
         try {
             db = this.getWritableDatabase();
-            ContentValues values = new ContentValues();
-
-            values.put(COLUMN_TYPE, question.type.name());
-            values.put(COLUMN_QUESTION, question.question);
-
-            // 将选项列表转换为JSON字符串
-            if (question.options != null && !question.options.isEmpty()) {
-                JSONArray optionsArray = new JSONArray(question.options);
-                values.put(COLUMN_OPTIONS, optionsArray.toString());
+            ContentValues values = toContentValues(question);
+            db.beginTransactionNonExclusive();
+            long id = db.insert(TABLE_QUESTIONS, null, values);
+            if (id != -1) {
+                bumpContentRevision(db);
             }
-
-            values.put(COLUMN_ANSWER, question.answer);
-
-            return db.insert(TABLE_QUESTIONS, null, values);
+            db.setTransactionSuccessful();
+            return id;
         } catch (Exception e) {
             Log.e(TAG, "插入题目失败: " + e.getMessage());
             return -1;
         } finally {
-            if (db != null) {
-                db.close();
+            if (db != null && db.inTransaction()) {
+                db.endTransaction();
             }
         }
     }
 
     /**
-     * 批量插入题目
+     * 批量导入题目，内容哈希相同的题目不会重复插入
      * @param questions 题目列表
-     * @return 插入成功的数量
+     * @return 新插入的数量
      */
     public int batchInsertQuestions(List<QuestionBankHelper.Question> questions) {
-        SQLiteDatabase db = null;
-        int successCount = 0;
+        QuestionBankImporter.Result result = new QuestionBankImporter.Result();
+        upsertQuestions(questions, result, null);
+        return result.inserted;
+    }
 
+    /**
+     * 批量导入题目：新题目插入，已有题目答案等内容有变化时更新，完全相同时跳过。
+     * 带题库ID的题目按题库ID定位，没有题库ID的题目按内容哈希去重。
+     * 复用同一组预编译语句，整个列表在一个事务中提交（调用方通过分批调用控制事务大小），
+     * 单行写入失败（如违反长度约束）只跳过该行，不影响其他行
+     * @param questions 题目列表
+     * @param result 累加新增、更新、跳过和失败的数量
+     * @param rowErrors 用于收集失败行的错误信息（"序号: 原因"），可为null
+     */
+    public void upsertQuestions(List<QuestionBankHelper.Question> questions, QuestionBankImporter.Result result,
+                                List<String> rowErrors) {
         if (questions == null || questions.isEmpty()) {
-            return 0;
+            return;
         }
 
+        SQLiteDatabase db = null;
+        SQLiteStatement insertStatement = null;
+        SQLiteStatement updateStatement = null;
         try {
             db = this.getWritableDatabase();
-            db.beginTransaction();
-            
-            // 使用预编译语句提高性能
-            String insertSql = "INSERT INTO " + TABLE_QUESTIONS + " (" + 
-                    COLUMN_TYPE + ", " + 
-                    COLUMN_QUESTION + ", " + 
-                    COLUMN_OPTIONS + ", " + 
-                    COLUMN_ANSWER + ") VALUES (?, ?, ?, ?)";
-            
-            // 预编译SQL语句
-            db.compileStatement(insertSql);
-            
-            for (QuestionBankHelper.Question question : questions) {
-                ContentValues values = new ContentValues();
-                values.put(COLUMN_TYPE, question.type.name());
-                values.put(COLUMN_QUESTION, question.question);
-                
-                // 将选项列表转换为JSON字符串
-                if (question.options != null && !question.options.isEmpty()) {
-                    JSONArray optionsArray = new JSONArray(question.options);
-                    values.put(COLUMN_OPTIONS, optionsArray.toString());
+            insertStatement = db.compileStatement(INSERT_QUESTION_SQL);
+            updateStatement = db.compileStatement(UPDATE_QUESTION_SQL);
+            // 非独占事务，WAL模式下导入期间其他连接仍可读取
+            db.beginTransactionNonExclusive();
+            int changedBefore = result.changedCount();
+
+            for (int i = 0; i < questions.size(); i++) {
+                QuestionBankHelper.Question question = questions.get(i);
+                try {
+                    upsertQuestion(db, insertStatement, updateStatement, question, result);
+                } catch (Exception e) {
+                    // 单行失败不回滚整个批次
+                    Log.w(TAG, "第 " + i + " 道题目写入失败: " + e.getMessage());
+                    result.failed++;
+                    if (rowErrors != null) {
+                        rowErrors.add(i + ": " + e.getMessage());
+                    }
                 }
-                
-                values.put(COLUMN_ANSWER, question.answer);
-                
-                long id = db.insert(TABLE_QUESTIONS, null, values);
-                if (id != -1) {
-                    successCount++;
+            }
+            if (result.changedCount() > changedBefore) {
+                bumpContentRevision(db);
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "批量导入题目失败: " + e.getMessage());
+        } finally {
+            if (insertStatement != null) {
+                insertStatement.close();
+            }
+            if (updateStatement != null) {
+                updateStatement.close();
+            }
+            if (db != null) {
+                if (db.inTransaction()) {
+                    db.endTransaction();
                 }
             }
+        }
+    }
+
+    /**
+     * 写入一道题目并在result中记录结果（新增、更新或跳过）。
+     * 有题库ID时按题库ID定位已有题目，找不到时认领内容相同且没有题库ID的旧题目；
+     * 没有题库ID时按内容哈希定位。内容相同但题库ID不同的题目分别保存
+     */
+    private void upsertQuestion(SQLiteDatabase db, SQLiteStatement insertStatement, SQLiteStatement updateStatement,
+                                QuestionBankHelper.Question question, QuestionBankImporter.Result result) {
+        prepareForInsert(question);
+        String options = optionsToJson(question);
+        Cursor cursor = null;
+        try {
+            if (question.sourceId != null) {
+                cursor = db.rawQuery(SELECT_BY_SOURCE_ID_SQL, new String[]{String.valueOf(question.sourceId)});
+                if (!cursor.moveToFirst()) {
+                    cursor.close();
+                    cursor = db.rawQuery(SELECT_UNOWNED_BY_CONTENT_HASH_SQL, new String[]{contentHash(question)});
+                    if (cursor.moveToFirst()) {
+                        // 补上题库ID
+                        bindUpdate(updateStatement, cursor.getLong(0), question, options);
+                        updateStatement.executeUpdateDelete();
+                        result.updated++;
+                        return;
+                    }
+                }
+            } else {
+                cursor = db.rawQuery(SELECT_BY_CONTENT_HASH_SQL, new String[]{contentHash(question)});
+            }
+            if (!cursor.moveToFirst()) {
+                bindInsert(insertStatement, question);
+                if (insertStatement.executeInsert() != -1) {
+                    result.inserted++;
+                } else {
+                    result.failed++;
+                }
+                return;
+            }
+
+            long id = cursor.getLong(0);
+            boolean unchanged = question.question.equals(cursor.getString(1))
+                    && equalsNullable(options, cursor.getString(2))
+                    && question.answer.equals(cursor.getString(3))
+                    && question.category.equals(cursor.getString(4));
+            if (unchanged) {
+                result.skipped++;
+                return;
+            }
+            bindUpdate(updateStatement, id, question, options);
+            updateStatement.executeUpdateDelete();
+            result.updated++;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    private static boolean equalsNullable(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * 在一个事务中应用题库增量更新：按题库ID更新或插入题目、删除题目，并更新题库版本。
+     * 耗时只与增量的大小有关；WAL模式下提交前其他线程读到的仍是更新前的完整题库。
+     * 任何一行失败都会回滚整个增量，题库版本保持不变
+     * @param baseVersion 增量所基于的题库版本，与当前版本不一致时不做任何修改
+     * @param newVersion 应用后的题库版本
+     * @param upserts 新增或修改的题目（sourceId不能为空）
+     * @param removedSourceIds 删除的题目的题库ID
+     * @param result 累加新增、更新和删除的数量
+     * @return 是否应用成功
+     */
+    public boolean applyDelta(int baseVersion, int newVersion, List<QuestionBankHelper.Question> upserts,
+                              List<Integer> removedSourceIds, QuestionBankImporter.Result result) {
+        SQLiteDatabase db = null;
+        SQLiteStatement insertStatement = null;
+        SQLiteStatement updateStatement = null;
+        SQLiteStatement deleteStatement = null;
+        try {
+            db = this.getWritableDatabase();
+            insertStatement = db.compileStatement(INSERT_QUESTION_SQL);
+            updateStatement = db.compileStatement(UPDATE_QUESTION_SQL);
+            deleteStatement = db.compileStatement(DELETE_BY_SOURCE_ID_SQL);
+            db.beginTransactionNonExclusive();
+
+            int currentVersion = readBankVersion(db);
+            if (currentVersion != baseVersion) {
+                Log.w(TAG, "增量基于题库版本 " + baseVersion + "，当前版本为 " + currentVersion + "，未应用");
+                return false;
+            }
+
+            for (QuestionBankHelper.Question question : upserts) {
+                upsertQuestion(db, insertStatement, updateStatement, question, result);
+            }
+            for (Integer sourceId : removedSourceIds) {
+                deleteStatement.bindLong(1, sourceId);
+                result.removed += deleteStatement.executeUpdateDelete();
+            }
+            writeBankVersion(db, newVersion);
+            bumpContentRevision(db);
             db.setTransactionSuccessful();
+            Log.d(TAG, "题库从版本 " + baseVersion + " 增量更新到版本 " + newVersion);
+            return true;
         } catch (Exception e) {
-            Log.e(TAG, "批量插入题目失败: " + e.getMessage());
+            Log.e(TAG, "应用增量更新失败: " + e.getMessage());
+            return false;
         } finally {
+            if (insertStatement != null) {
+                insertStatement.close();
+            }
+            if (updateStatement != null) {
+                updateStatement.close();
+            }
+            if (deleteStatement != null) {
+                deleteStatement.close();
+            }
             if (db != null) {
-                db.endTransaction();
-                db.close();
+                if (db.inTransaction()) {
+                    db.endTransaction();
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取当前题库版本
+     * @return 题库版本，从未设置过时返回0
+     */
+    public int getBankVersion() {
+        try {
+            return readBankVersion(this.getReadableDatabase());
+        } catch (Exception e) {
+            Log.e(TAG, "获取题库版本失败: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 设置题库版本，导入带版本号的完整题库后调用
+     * @param version 题库版本
+     */
+    public void setBankVersion(int version) {
+        try {
+            writeBankVersion(this.getWritableDatabase(), version);
+        } catch (Exception e) {
+            Log.e(TAG, "设置题库版本失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取题库内容修订号，题目的任何新增、更新或删除都会使其增加（与题库文件中的版本号无关）
+     * @return 内容修订号，从未写入过题目时返回0
+     */
+    public int getContentRevision() {
+        try {
+            return readMetaInt(this.getReadableDatabase(), META_CONTENT_REVISION);
+        } catch (Exception e) {
+            Log.e(TAG, "获取内容修订号失败: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private static int readBankVersion(SQLiteDatabase db) {
+        return readMetaInt(db, META_BANK_VERSION);
+    }
+
+    private static int readMetaInt(SQLiteDatabase db, String key) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT " + COLUMN_META_VALUE + " FROM " + TABLE_BANK_META +
+                    " WHERE " + COLUMN_META_KEY + " = ?", new String[]{key});
+            return cursor.moveToFirst() ? Integer.parseInt(cursor.getString(0)) : 0;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
             }
         }
+    }
 
-        return successCount;
+    /**
+     * 内容修订号加一，需在写入题目的同一事务中调用
+     */
+    private static void bumpContentRevision(SQLiteDatabase db) {
+        int revision = readMetaInt(db, META_CONTENT_REVISION) + 1;
+        db.execSQL("INSERT OR REPLACE INTO " + TABLE_BANK_META + " (" + COLUMN_META_KEY + ", " + COLUMN_META_VALUE +
+                ") VALUES (?, ?)", new Object[]{META_CONTENT_REVISION, String.valueOf(revision)});
+    }
+
+    private static void writeBankVersion(SQLiteDatabase db, int version) {
+        db.execSQL("INSERT OR REPLACE INTO " + TABLE_BANK_META + " (" + COLUMN_META_KEY + ", " + COLUMN_META_VALUE +
+                ") VALUES (?, ?)", new Object[]{META_BANK_VERSION, String.valueOf(version)});
+    }
+
+    /**
+     * 删除题目表上除内容哈希和来源ID以外的索引，用于大批量导入前减少每行的索引维护开销
+     * @return 被删除索引的建表语句，导入完成后传给restoreIndexes重建
+     */
+    public List<String> dropIndexes() {
+        List<String> indexSqls = new ArrayList<>();
+        SQLiteDatabase db = null;
+        Cursor cursor = null;
+        try {
+            db = this.getWritableDatabase();
+            // sql为NULL的是主键等自动索引，不能删除
+            // 内容哈希和来源ID索引保留，导入时每行都要按来源ID或哈希查找已有题目，没有索引会退化为全表扫描
+            cursor = db.rawQuery("SELECT name, sql FROM sqlite_master WHERE type = 'index' AND tbl_name = ? AND sql IS NOT NULL"
+                            + " AND name NOT IN (?, ?)", new String[]{TABLE_QUESTIONS, INDEX_CONTENT_HASH, INDEX_SOURCE_ID});
+            List<String> indexNames = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                indexNames.add(cursor.getString(0));
+                indexSqls.add(cursor.getString(1));
+            }
+            for (String indexName : indexNames) {
+                db.execSQL("DROP INDEX IF EXISTS " + indexName);
+            }
+            Log.d(TAG, "批量导入前删除索引: " + indexNames);
+        } catch (Exception e) {
+            Log.e(TAG, "删除索引失败: " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return indexSqls;
+    }
+
+    /**
+     * 重建dropIndexes删除的索引
+     * @param indexSqls dropIndexes返回的建表语句
+     */
+    public void restoreIndexes(List<String> indexSqls) {
+        if (indexSqls == null || indexSqls.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = null;
+        try {
+            db = this.getWritableDatabase();
+            for (String indexSql : indexSqls) {
+                db.execSQL(indexSql);
+            }
+            Log.d(TAG, "批量导入后重建 " + indexSqls.size() + " 个索引");
+        } catch (Exception e) {
+            Log.e(TAG, "重建索引失败: " + e.getMessage());
+        }
     }
 
     /**
@@ -173,6 +907,64 @@ public class DBHelper extends SQLiteOpenHelper {
         return getQuestionsByPage(0, Integer.MAX_VALUE);
     }
     
+    /**
+     * 流式扫描题目的回调
+     */
+    public interface QuestionVisitor {
+        /**
+         * 处理一道题目
+         * @param question 题目对象
+         * @return true继续扫描，false停止扫描
+         */
+        boolean visit(QuestionBankHelper.Question question);
+    }
+
+    /**
+     * 按ID顺序流式扫描题目，每次只从数据库读取一批，逐道交给回调处理，不保留已处理的题目
+     * @param category 类别，为null或空时扫描全部题目
+     * @param visitor 题目回调，返回false时提前结束扫描
+     * @return 已交给回调处理的题目数量
+     */
+    public int scanQuestions(String category, QuestionVisitor visitor) {
+        SQLiteDatabase db = null;
+        Cursor cursor = null;
+        boolean filterCategory = category != null && !category.isEmpty();
+        int visitedCount = 0;
+        // 按上一批最后一道题目的ID继续查询，不使用OFFSET，避免每批都重新跳过前面的行
+        int lastId = Integer.MIN_VALUE;
+
+        try {
+            db = this.getReadableDatabase();
+            while (true) {
+                cursor = filterCategory
+                        ? db.rawQuery(SCAN_QUESTIONS_BY_CATEGORY_SQL, new String[]{String.valueOf(lastId), category})
+                        : db.rawQuery(SCAN_QUESTIONS_SQL, new String[]{String.valueOf(lastId)});
+                int rowCount = 0;
+                while (cursor.moveToNext()) {
+                    QuestionBankHelper.Question question = cursorToQuestion(cursor);
+                    lastId = question.id;
+                    rowCount++;
+                    visitedCount++;
+                    if (!visitor.visit(question)) {
+                        return visitedCount;
+                    }
+                }
+                cursor.close();
+                cursor = null;
+                if (rowCount < SCAN_WINDOW_SIZE) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "扫描题目失败: " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return visitedCount;
+    }
+
     /**
      * 分页获取题目
      * @param page 页码（从0开始）
@@ -214,9 +1006,6 @@ public class DBHelper extends SQLiteOpenHelper {
             if (cursor != null) {
                 cursor.close();
             }
-            if (db != null) {
-                db.close();
-            }
         }
 
         return questions;
@@ -235,30 +1024,79 @@ public class DBHelper extends SQLiteOpenHelper {
         try {
             db = this.getReadableDatabase();
 
+            cursor = db.rawQuery(SELECT_QUESTION_BY_ID_SQL, new String[]{String.valueOf(id)});
+
+            if (cursor.moveToFirst()) {
+                question = cursorToQuestion(cursor);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "根据ID获取题目失败: " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return question;
+    }
+
+    /**
+     * 根据ID列表批量获取题目
+     * @param ids 题目ID列表
+     * @return 题目列表，顺序与传入的ID顺序一致，不存在的ID会被忽略
+     */
+    public List<QuestionBankHelper.Question> getQuestionsByIds(List<Integer> ids) {
+        List<QuestionBankHelper.Question> questions = new ArrayList<>();
+        if (ids == null || ids.isEmpty()) {
+            return questions;
+        }
+
+        SQLiteDatabase db = null;
+        Cursor cursor = null;
+
+        try {
+            db = this.getReadableDatabase();
+
+            // 构建IN查询的占位符
+            StringBuilder placeholders = new StringBuilder();
+            String[] selectionArgs = new String[ids.size()];
+            for (int i = 0; i < ids.size(); i++) {
+                placeholders.append(i == 0 ? "?" : ", ?");
+                selectionArgs[i] = String.valueOf(ids.get(i));
+            }
+
             cursor = db.query(
                     TABLE_QUESTIONS,
                     null,
-                    COLUMN_ID + " = ?",
-                    new String[]{String.valueOf(id)},
+                    COLUMN_ID + " IN (" + placeholders + ")",
+                    selectionArgs,
                     null,
                     null,
                     null
             );
 
+            Map<Integer, QuestionBankHelper.Question> questionMap = new HashMap<>();
             if (cursor.moveToFirst()) {
-                question = cursorToQuestion(cursor);
+                do {
+                    QuestionBankHelper.Question question = cursorToQuestion(cursor);
+                    questionMap.put(question.id, question);
+                } while (cursor.moveToNext());
+            }
+
+            // 按传入的ID顺序返回
+            for (Integer id : ids) {
+                QuestionBankHelper.Question question = questionMap.get(id);
+                if (question != null) {
+                    questions.add(question);
+                }
             }
         } catch (Exception e) {
-            Log.e(TAG, "根据ID获取题目失败: " + e.getMessage());
+            Log.e(TAG, "批量获取题目失败: " + e.getMessage());
         } finally {
             if (cursor != null) {
                 cursor.close();
             }
-            if (db != null) {
-                db.close();
-            }
         }
-        return question;
+        return questions;
     }
 
     /**
@@ -267,6 +1105,16 @@ public class DBHelper extends SQLiteOpenHelper {
      * @return 匹配的题目列表
      */
     public List<QuestionBankHelper.Question> searchQuestions(String keyword) {
+        return searchQuestions(keyword, null);
+    }
+
+    /**
+     * 在指定类别中搜索题目（通过题干全文索引匹配）
+     * @param keyword 搜索关键词
+     * @param category 类别，为null或空时搜索全部题目
+     * @return 匹配的题目列表
+     */
+    public List<QuestionBankHelper.Question> searchQuestions(String keyword, String category) {
         List<QuestionBankHelper.Question> questions = new ArrayList<>();
         SQLiteDatabase db = null;
         Cursor cursor = null;
@@ -279,18 +1127,13 @@ public class DBHelper extends SQLiteOpenHelper {
                 return questions;
             }
             
-            // 转义SQL通配符（%和_），确保搜索安全
-            String escapedKeyword = keyword.replaceAll("([%_])", "\\\\$1");
-            
-            // 添加COLLATE NOCASE以忽略大小写，确保搜索匹配
-            String selection = COLUMN_QUESTION + " LIKE ? COLLATE NOCASE";
-            String[] selectionArgs = new String[]{"%" + escapedKeyword + "%"};
-
+            // 通过全文索引查找题干包含关键词的题目
+            String[] selection = keywordSelection(keyword, category);
             cursor = db.query(
                     TABLE_QUESTIONS,
                     null,
-                    selection,
-                    selectionArgs,
+                    selection[0],
+                    Arrays.copyOfRange(selection, 1, selection.length),
                     null,
                     null,
                     null
@@ -308,13 +1151,43 @@ public class DBHelper extends SQLiteOpenHelper {
             if (cursor != null) {
                 cursor.close();
             }
-            if (db != null) {
-                db.close();
-            }
         }
         return questions;
     }
 
+    /**
+     * 在指定类别中搜索题干包含关键词的题目ID（只读取ID列，不构建题目对象）
+     * @param keyword 搜索关键词
+     * @param category 类别，为null或空时搜索全部题目
+     * @return 匹配的题目ID集合
+     */
+    public IdBitmap searchQuestionIds(String keyword, String category) {
+        IdBitmap ids = new IdBitmap();
+        if (keyword == null || keyword.isEmpty()) {
+            return ids;
+        }
+        SQLiteDatabase db = null;
+        Cursor cursor = null;
+
+        try {
+            db = this.getReadableDatabase();
+
+            String[] selection = keywordSelection(keyword, category);
+            cursor = db.query(TABLE_QUESTIONS, new String[]{COLUMN_ID}, selection[0],
+                    Arrays.copyOfRange(selection, 1, selection.length), null, null, null);
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "搜索题目ID失败: " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return ids;
+    }
+
     /**
      * 删除所有题目
      * @return 影响的行数
@@ -323,44 +1196,146 @@ public class DBHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = null;
         try {
             db = this.getWritableDatabase();
-            return db.delete(TABLE_QUESTIONS, null, null);
+            db.beginTransactionNonExclusive();
+            // 题库清空后版本号失效，之后只能导入完整题库；内容修订号保留并继续增加
+            db.delete(TABLE_BANK_META, COLUMN_META_KEY + " = ?", new String[]{META_BANK_VERSION});
+            // 查询记录中的题目ID随之失效
+            db.delete(TABLE_CAPTURE_HISTORY, null, null);
+            int rowsDeleted = db.delete(TABLE_QUESTIONS, null, null);
+            bumpContentRevision(db);
+            db.setTransactionSuccessful();
+            return rowsDeleted;
         } catch (Exception e) {
             Log.e(TAG, "删除所有题目失败: " + e.getMessage());
             return 0;
         } finally {
+            if (db != null && db.inTransaction()) {
+                db.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中批量写入截图查询记录，并删除超出保留条数的最早记录
+     * @param records 查询记录
+     */
+    public void insertCaptureHistory(List<CaptureHistoryWriter.Record> records) {
+        if (records == null || records.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = null;
+        SQLiteStatement insertStatement = null;
+        try {
+            db = this.getWritableDatabase();
+            insertStatement = db.compileStatement(INSERT_CAPTURE_HISTORY_SQL);
+            db.beginTransactionNonExclusive();
+            for (CaptureHistoryWriter.Record record : records) {
+                insertStatement.clearBindings();
+                if (record.questionId >= 0) {
+                    insertStatement.bindLong(1, record.questionId);
+                } else {
+                    insertStatement.bindNull(1);
+                }
+                insertStatement.bindDouble(2, record.score);
+                insertStatement.bindLong(3, record.latencyMillis);
+                insertStatement.bindLong(4, record.capturedAt);
+                insertStatement.executeInsert();
+            }
+            db.execSQL("DELETE FROM " + TABLE_CAPTURE_HISTORY + " WHERE " + COLUMN_ID + " <= " +
+                    "(SELECT MAX(" + COLUMN_ID + ") FROM " + TABLE_CAPTURE_HISTORY + ") - " + MAX_CAPTURE_HISTORY_ROWS);
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "写入查询记录失败: " + e.getMessage());
+        } finally {
+            if (insertStatement != null) {
+                insertStatement.close();
+            }
             if (db != null) {
-                db.close();
+                if (db.inTransaction()) {
+                    db.endTransaction();
+                }
             }
         }
     }
 
     /**
-     * 获取题目总数
-     * @return 题目总数
+     * 获取查询记录中命中次数最多的题目ID
+     * @param limit 最多返回的数量
+     * @return 题目ID列表，按命中次数降序排列
      */
-    public int getQuestionCount() {
+    public List<Integer> getMostHitQuestionIds(int limit) {
+        List<Integer> ids = new ArrayList<>();
+        SQLiteDatabase db = null;
+        Cursor cursor = null;
+        try {
+            db = this.getReadableDatabase();
+            cursor = db.rawQuery("SELECT " + COLUMN_HISTORY_QUESTION_ID + " FROM " + TABLE_CAPTURE_HISTORY +
+                    " WHERE " + COLUMN_HISTORY_QUESTION_ID + " IS NOT NULL GROUP BY " + COLUMN_HISTORY_QUESTION_ID +
+                    " ORDER BY COUNT(*) DESC, MAX(" + COLUMN_HISTORY_CAPTURED_AT + ") DESC LIMIT ?",
+                    new String[]{String.valueOf(limit)});
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "获取常用题目失败: " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 获取题库中的全部类别
+     * @return 类别列表（按名称排序，不含空类别）
+     */
+    public List<String> getCategories() {
+        List<String> categories = new ArrayList<>();
         SQLiteDatabase db = null;
         Cursor cursor = null;
-        int count = 0;
 
         try {
             db = this.getReadableDatabase();
-            cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_QUESTIONS, null);
-            
+            cursor = db.rawQuery("SELECT DISTINCT " + COLUMN_CATEGORY + " FROM " + TABLE_QUESTIONS +
+                    " WHERE " + COLUMN_CATEGORY + " != '' ORDER BY " + COLUMN_CATEGORY, null);
             if (cursor.moveToFirst()) {
-                count = cursor.getInt(0);
+                do {
+                    categories.add(cursor.getString(0));
+                } while (cursor.moveToNext());
             }
         } catch (Exception e) {
-            Log.e(TAG, "获取题目总数失败: " + e.getMessage());
+            Log.e(TAG, "获取类别失败: " + e.getMessage());
         } finally {
             if (cursor != null) {
                 cursor.close();
             }
-            if (db != null) {
-                db.close();
+        }
+        return categories;
+    }
+
+    /**
+     * 获取题目总数
+     * @return 题目总数
+     */
+    public int getQuestionCount() {
+        try {
+            SQLiteStatement statement = getCountStatement();
+            // SQLiteStatement不是线程安全的，多个线程共用时逐个执行
+            synchronized (statement) {
+                return (int) statement.simpleQueryForLong();
             }
+        } catch (Exception e) {
+            Log.e(TAG, "获取题目总数失败: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private synchronized SQLiteStatement getCountStatement() {
+        if (countStatement == null) {
+            countStatement = this.getReadableDatabase().compileStatement(COUNT_QUESTIONS_SQL);
         }
-        return count;
+        return countStatement;
     }
 
     /**
@@ -374,6 +1349,13 @@ public class DBHelper extends SQLiteOpenHelper {
         question.type = QuestionBankHelper.QuestionType.valueOf(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_TYPE)));
         question.question = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_QUESTION));
         question.answer = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ANSWER));
+        question.correctMask = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_CORRECT_MASK));
+        question.truePolarityMask = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_TRUE_MASK));
+        // 数据库升级过程中旧版本的表可能还没有类别列
+        int categoryIndex = cursor.getColumnIndex(COLUMN_CATEGORY);
+        question.category = categoryIndex >= 0 ? cursor.getString(categoryIndex) : "";
+        int sourceIdIndex = cursor.getColumnIndex(COLUMN_SOURCE_ID);
+        question.sourceId = sourceIdIndex >= 0 && !cursor.isNull(sourceIdIndex) ? cursor.getInt(sourceIdIndex) : null;
 
         // 解析选项JSON
         String optionsJson = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_OPTIONS));
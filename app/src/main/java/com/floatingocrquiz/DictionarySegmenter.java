@@ -0,0 +1,335 @@
+package com.floatingocrquiz;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 基于题库词表的中文分词器
+ * 词表由题库题干中反复出现的n元组挖掘得到，存放在双数组Trie中，
+ * 分词时分别进行正向和逆向最大匹配，选择切分结果更合理的一种。
+ */
+public final class DictionarySegmenter {
+
+    // 词表挖掘参数：n元组长度范围和最小文档频率
+    private static final int MIN_WORD_LENGTH = 2;
+    private static final int MAX_WORD_LENGTH = 4;
+    private static final int MIN_DOCUMENT_FREQUENCY = 2;
+
+    // 字符 -> 连续编码（0表示不在词表中）
+    private final int[] charCodes;
+    // 双数组Trie
+    private final int[] base;
+    private final int[] check;
+    // 状态 -> 词的文档频率（0表示该状态不是词尾）
+    private final int[] wordFreqs;
+    private final int wordCount;
+    private final int documentCount;
+
+    private DictionarySegmenter(int[] charCodes, int[] base, int[] check, int[] wordFreqs,
+                                int wordCount, int documentCount) {
+        this.charCodes = charCodes;
+        this.base = base;
+        this.check = check;
+        this.wordFreqs = wordFreqs;
+        this.wordCount = wordCount;
+        this.documentCount = documentCount;
+    }
+
+    /**
+     * 序列化分词器，写入索引快照
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        IndexSnapshot.writeInts(out, charCodes);
+        IndexSnapshot.writeInts(out, base);
+        IndexSnapshot.writeInts(out, check);
+        IndexSnapshot.writeInts(out, wordFreqs);
+        out.writeInt(wordCount);
+        out.writeInt(documentCount);
+    }
+
+    /**
+     * 从索引快照恢复分词器
+     */
+    static DictionarySegmenter readFrom(ByteBuffer in) {
+        int[] charCodes = IndexSnapshot.readInts(in);
+        int[] base = IndexSnapshot.readInts(in);
+        int[] check = IndexSnapshot.readInts(in);
+        int[] wordFreqs = IndexSnapshot.readInts(in);
+        int wordCount = in.getInt();
+        int documentCount = in.getInt();
+        return new DictionarySegmenter(charCodes, base, check, wordFreqs, wordCount, documentCount);
+    }
+
+    /**
+     * 从题干中挖掘高频n元组作为词表，并构建分词器
+     * @param texts 题干列表
+     * @return 分词器
+     */
+    public static DictionarySegmenter build(List<String> texts) {
+        Map<String, Integer> docFreqs = new HashMap<>();
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+            // 同一道题内重复出现的n元组只计一次
+            Set<String> seen = new HashSet<>();
+            for (String run : text.toLowerCase().split("[^一-龥]+")) {
+                for (int length = MIN_WORD_LENGTH; length <= MAX_WORD_LENGTH; length++) {
+                    for (int start = 0; start + length <= run.length(); start++) {
+                        seen.add(run.substring(start, start + length));
+                    }
+                }
+            }
+            for (String gram : seen) {
+                Integer freq = docFreqs.get(gram);
+                docFreqs.put(gram, freq == null ? 1 : freq + 1);
+            }
+        }
+
+        Map<String, Integer> vocabulary = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : docFreqs.entrySet()) {
+            if (entry.getValue() >= MIN_DOCUMENT_FREQUENCY) {
+                vocabulary.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return fromVocabulary(vocabulary, texts.size());
+    }
+
+    /**
+     * 根据词表构建双数组Trie
+     * @param vocabulary 词 -> 文档频率
+     * @param documentCount 题目总数
+     */
+    static DictionarySegmenter fromVocabulary(Map<String, Integer> vocabulary, int documentCount) {
+        // 为出现过的字符分配连续编码，缩小双数组的跨度
+        int[] charCodes = new int[Character.MAX_VALUE + 1];
+        int nextCode = 1;
+        TrieNode root = new TrieNode();
+        for (Map.Entry<String, Integer> entry : vocabulary.entrySet()) {
+            TrieNode node = root;
+            String word = entry.getKey();
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                if (charCodes[c] == 0) {
+                    charCodes[c] = nextCode++;
+                }
+                TrieNode child = node.children.get(charCodes[c]);
+                if (child == null) {
+                    child = new TrieNode();
+                    node.children.put(charCodes[c], child);
+                }
+                node = child;
+            }
+            node.freq = entry.getValue();
+        }
+
+        int capacity = Math.max(256, nextCode * 2);
+        int[] base = new int[capacity];
+        int[] check = new int[capacity];
+        int[] wordFreqs = new int[capacity];
+        Arrays.fill(check, -1);
+        check[0] = 0;
+
+        // 广度优先为每个节点寻找可容纳全部子节点的base值
+        ArrayDeque<TrieNode> queue = new ArrayDeque<>();
+        queue.add(root);
+        int firstFree = 1;
+        while (!queue.isEmpty()) {
+            TrieNode node = queue.poll();
+            int state = node.state;
+            if (node.children.isEmpty()) {
+                continue;
+            }
+
+            while (firstFree < check.length && check[firstFree] != -1) {
+                firstFree++;
+            }
+            int minCode = node.children.firstKey();
+            int candidate = Math.max(1, firstFree - minCode);
+            while (true) {
+                boolean fits = true;
+                for (int code : node.children.keySet()) {
+                    int slot = candidate + code;
+                    if (slot < check.length && check[slot] != -1) {
+                        fits = false;
+                        break;
+                    }
+                }
+                if (fits) {
+                    break;
+                }
+                candidate++;
+            }
+
+            int maxSlot = candidate + node.children.lastKey();
+            if (maxSlot >= check.length) {
+                int newCapacity = Math.max(check.length * 2, maxSlot + 1);
+                base = Arrays.copyOf(base, newCapacity);
+                wordFreqs = Arrays.copyOf(wordFreqs, newCapacity);
+                int oldLength = check.length;
+                check = Arrays.copyOf(check, newCapacity);
+                Arrays.fill(check, oldLength, newCapacity, -1);
+            }
+
+            base[state] = candidate;
+            for (Map.Entry<Integer, TrieNode> child : node.children.entrySet()) {
+                TrieNode childNode = child.getValue();
+                childNode.state = candidate + child.getKey();
+                check[childNode.state] = state;
+                wordFreqs[childNode.state] = childNode.freq;
+                queue.add(childNode);
+            }
+        }
+
+        return new DictionarySegmenter(charCodes, base, check, wordFreqs, vocabulary.size(), documentCount);
+    }
+
+    /**
+     * 词表中的词数
+     */
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * 构建词表时的题目总数
+     */
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * 查询词在题库中的文档频率
+     * @return 文档频率，不在词表中时返回0
+     */
+    public int documentFrequency(String word) {
+        return lookup(word, 0, word.length());
+    }
+
+    /**
+     * 对文本进行双向最大匹配分词
+     * 正向和逆向结果不同时，优先选择词数更少的，其次选择单字更少的，仍相同时采用逆向结果
+     * @param text 待分词文本
+     * @return 分词结果
+     */
+    public List<String> segment(String text) {
+        List<String> forward = forwardMaxMatch(text);
+        List<String> backward = backwardMaxMatch(text);
+
+        if (forward.size() != backward.size()) {
+            return forward.size() < backward.size() ? forward : backward;
+        }
+        return countSingleChars(forward) < countSingleChars(backward) ? forward : backward;
+    }
+
+    /**
+     * 正向最大匹配
+     */
+    private List<String> forwardMaxMatch(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = longestMatchFrom(text, start);
+            tokens.add(text.substring(start, end));
+            start = end;
+        }
+        return tokens;
+    }
+
+    /**
+     * 逆向最大匹配
+     */
+    private List<String> backwardMaxMatch(String text) {
+        List<String> tokens = new ArrayList<>();
+        int end = text.length();
+        while (end > 0) {
+            int start = end - 1;
+            for (int length = Math.min(MAX_WORD_LENGTH, end); length >= MIN_WORD_LENGTH; length--) {
+                if (lookup(text, end - length, end) > 0) {
+                    start = end - length;
+                    break;
+                }
+            }
+            tokens.add(0, text.substring(start, end));
+            end = start;
+        }
+        return tokens;
+    }
+
+    /**
+     * 从start位置沿Trie向下匹配，返回最长词的结束位置（无匹配时返回start+1）
+     */
+    private int longestMatchFrom(String text, int start) {
+        int state = 0;
+        int matchedEnd = start + 1;
+        for (int i = start; i < text.length() && i - start < MAX_WORD_LENGTH; i++) {
+            state = transition(state, text.charAt(i));
+            if (state < 0) {
+                break;
+            }
+            if (wordFreqs[state] > 0 && i + 1 - start >= MIN_WORD_LENGTH) {
+                matchedEnd = i + 1;
+            }
+        }
+        return matchedEnd;
+    }
+
+    /**
+     * 查询text[start, end)是否为词表中的词
+     * @return 文档频率，不是词时返回0
+     */
+    private int lookup(CharSequence text, int start, int end) {
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            state = transition(state, text.charAt(i));
+            if (state < 0) {
+                return 0;
+            }
+        }
+        return state == 0 ? 0 : wordFreqs[state];
+    }
+
+    /**
+     * 双数组状态转移，失败返回-1
+     */
+    private int transition(int state, char c) {
+        int code = charCodes[c];
+        if (code == 0) {
+            return -1;
+        }
+        int next = base[state] + code;
+        if (base[state] == 0 || next >= check.length || check[next] != state) {
+            return -1;
+        }
+        return next;
+    }
+
+    private static int countSingleChars(List<String> tokens) {
+        int count = 0;
+        for (String token : tokens) {
+            if (token.length() == 1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 构建双数组时使用的临时Trie节点
+     */
+    private static class TrieNode {
+        final TreeMap<Integer, TrieNode> children = new TreeMap<>();
+        int freq;
+        int state;
+    }
+}
@@ -0,0 +1,375 @@
+package com.floatingocrquiz;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 题目指纹匹配器
+ * 对每道题目计算若干个在整个题库中只出现一次的最短子串（6~10个字符）作为指纹，
+ * 指纹由广义后缀数组和LCP数组求出；查询时用全部指纹构建的Aho-Corasick自动机
+ * 线性扫描一遍OCR文本，命中同一道题目的多个指纹时即可直接确定题目。
+ */
+public final class FingerprintMatcher {
+
+    // 指纹长度范围
+    private static final int MIN_FINGERPRINT_LENGTH = 6;
+    private static final int MAX_FINGERPRINT_LENGTH = 10;
+    // 每道题目最多保留的指纹数
+    private static final int MAX_FINGERPRINTS_PER_QUESTION = 4;
+    // 确定题目所需的指纹命中数（指纹不足该数量的题目需要全部命中）
+    private static final int MIN_FINGERPRINT_HITS = 2;
+
+    // 后缀数组排序键中序号占用的位数
+    private static final int INDEX_BITS = 21;
+
+    // 序号 -> 题目ID，序号 -> 指纹数
+    private final int[] questionIds;
+    private final int[] fingerprintCounts;
+    private final int totalFingerprints;
+
+    // Aho-Corasick自动机：边（状态<<16 | 字符 -> 状态）、失败链接、状态输出的题目序号（-1表示无输出）
+    private final Map<Long, Integer> edges;
+    private final int[] failure;
+    private final int[] outputs;
+    // 沿失败链接可达的最近输出状态（-1表示无）
+    private final int[] outputLinks;
+
+    private FingerprintMatcher(int[] questionIds, int[] fingerprintCounts, int totalFingerprints,
+                               Map<Long, Integer> edges, int[] failure, int[] outputs, int[] outputLinks) {
+        this.questionIds = questionIds;
+        this.fingerprintCounts = fingerprintCounts;
+        this.totalFingerprints = totalFingerprints;
+        this.edges = edges;
+        this.failure = failure;
+        this.outputs = outputs;
+        this.outputLinks = outputLinks;
+    }
+
+    /**
+     * 序列化自动机，写入索引快照
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        IndexSnapshot.writeInts(out, questionIds);
+        IndexSnapshot.writeInts(out, fingerprintCounts);
+        out.writeInt(totalFingerprints);
+        out.writeInt(edges.size());
+        for (Map.Entry<Long, Integer> edge : edges.entrySet()) {
+            out.writeLong(edge.getKey());
+            out.writeInt(edge.getValue());
+        }
+        IndexSnapshot.writeInts(out, failure);
+        IndexSnapshot.writeInts(out, outputs);
+        IndexSnapshot.writeInts(out, outputLinks);
+    }
+
+    /**
+     * 从索引快照恢复自动机
+     */
+    static FingerprintMatcher readFrom(ByteBuffer in) {
+        int[] questionIds = IndexSnapshot.readInts(in);
+        int[] fingerprintCounts = IndexSnapshot.readInts(in);
+        int totalFingerprints = in.getInt();
+        int edgeCount = in.getInt();
+        Map<Long, Integer> edges = new HashMap<>(edgeCount * 2);
+        for (int i = 0; i < edgeCount; i++) {
+            long key = in.getLong();
+            edges.put(key, in.getInt());
+        }
+        int[] failure = IndexSnapshot.readInts(in);
+        int[] outputs = IndexSnapshot.readInts(in);
+        int[] outputLinks = IndexSnapshot.readInts(in);
+        return new FingerprintMatcher(questionIds, fingerprintCounts, totalFingerprints,
+                edges, failure, outputs, outputLinks);
+    }
+
+    /**
+     * 计算全部题目的指纹并构建自动机
+     * @param questionIds 序号 -> 题目ID
+     * @param normalizedStems 序号 -> 归一化后的题干
+     * @return 指纹匹配器
+     */
+    public static FingerprintMatcher build(int[] questionIds, List<String> normalizedStems) {
+        List<List<String>> fingerprints = computeFingerprints(normalizedStems);
+
+        int[] fingerprintCounts = new int[questionIds.length];
+        Map<Long, Integer> edges = new HashMap<>();
+        List<Integer> outputList = new ArrayList<>();
+        outputList.add(-1);
+        int totalFingerprints = 0;
+
+        for (int doc = 0; doc < fingerprints.size(); doc++) {
+            for (String fingerprint : fingerprints.get(doc)) {
+                int state = 0;
+                for (int i = 0; i < fingerprint.length(); i++) {
+                    long key = edgeKey(state, fingerprint.charAt(i));
+                    Integer next = edges.get(key);
+                    if (next == null) {
+                        next = outputList.size();
+                        outputList.add(-1);
+                        edges.put(key, next);
+                    }
+                    state = next;
+                }
+                outputList.set(state, doc);
+                fingerprintCounts[doc]++;
+                totalFingerprints++;
+            }
+        }
+
+        int stateCount = outputList.size();
+        int[] outputs = new int[stateCount];
+        for (int i = 0; i < stateCount; i++) {
+            outputs[i] = outputList.get(i);
+        }
+
+        // 按层次计算失败链接，需要每个状态的子节点列表
+        List<List<long[]>> children = new ArrayList<>(stateCount);
+        for (int i = 0; i < stateCount; i++) {
+            children.add(new ArrayList<>());
+        }
+        for (Map.Entry<Long, Integer> edge : edges.entrySet()) {
+            long key = edge.getKey();
+            children.get((int) (key >>> 16)).add(new long[]{key & 0xFFFF, edge.getValue()});
+        }
+
+        int[] failure = new int[stateCount];
+        int[] outputLinks = new int[stateCount];
+        Arrays.fill(outputLinks, -1);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (long[] child : children.get(0)) {
+            queue.add((int) child[1]);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (long[] child : children.get(state)) {
+                char c = (char) child[0];
+                int next = (int) child[1];
+                int fallback = failure[state];
+                Integer target = edges.get(edgeKey(fallback, c));
+                while (target == null && fallback != 0) {
+                    fallback = failure[fallback];
+                    target = edges.get(edgeKey(fallback, c));
+                }
+                failure[next] = target == null ? 0 : target;
+                outputLinks[next] = outputs[failure[next]] >= 0 ? failure[next] : outputLinks[failure[next]];
+                queue.add(next);
+            }
+        }
+
+        return new FingerprintMatcher(questionIds, fingerprintCounts, totalFingerprints,
+                edges, failure, outputs, outputLinks);
+    }
+
+    /**
+     * 指纹总数
+     */
+    public int getFingerprintCount() {
+        return totalFingerprints;
+    }
+
+    /**
+     * 扫描归一化后的OCR文本，尝试直接确定题目
+     * 只有一道题目命中指纹，且命中数达到要求时才确定，否则交给常规检索
+     * @param normalizedText 归一化后的OCR文本
+     * @return 确定的题目ID，无法确定时返回-1
+     */
+    public int identify(String normalizedText) {
+        if (totalFingerprints == 0 || normalizedText == null || normalizedText.isEmpty()) {
+            return -1;
+        }
+
+        // 命中的指纹（以终止状态表示），同一指纹多次出现只计一次
+        Set<Integer> matchedStates = new HashSet<>();
+        int state = 0;
+        for (int i = 0; i < normalizedText.length(); i++) {
+            char c = normalizedText.charAt(i);
+            Integer next = edges.get(edgeKey(state, c));
+            while (next == null && state != 0) {
+                state = failure[state];
+                next = edges.get(edgeKey(state, c));
+            }
+            state = next == null ? 0 : next;
+
+            for (int output = outputs[state] >= 0 ? state : outputLinks[state]; output >= 0; output = outputLinks[output]) {
+                matchedStates.add(output);
+            }
+        }
+
+        Map<Integer, Integer> hits = new HashMap<>();
+        for (int matched : matchedStates) {
+            Integer count = hits.get(outputs[matched]);
+            hits.put(outputs[matched], count == null ? 1 : count + 1);
+        }
+
+        if (hits.size() != 1) {
+            return -1;
+        }
+        Map.Entry<Integer, Integer> hit = hits.entrySet().iterator().next();
+        int doc = hit.getKey();
+        int required = Math.min(MIN_FINGERPRINT_HITS, fingerprintCounts[doc]);
+        return hit.getValue() >= required ? questionIds[doc] : -1;
+    }
+
+    /**
+     * 使用广义后缀数组计算每道题目的指纹
+     * 位置p处只出现一次的最短子串长度为 max(与相邻后缀的LCP) + 1，
+     * 优先选择较短的指纹，同一道题目的指纹互不重叠
+     */
+    static List<List<String>> computeFingerprints(List<String> normalizedStems) {
+        int docCount = normalizedStems.size();
+        List<List<String>> fingerprints = new ArrayList<>(docCount);
+
+        // 拼接全部题干，每道题目之后放置一个互不相同的分隔符，保证LCP不会跨越题目
+        int totalLength = 0;
+        for (String stem : normalizedStems) {
+            totalLength += stem.length() + 1;
+        }
+        if (totalLength + docCount + Character.MAX_VALUE >= (1 << INDEX_BITS)) {
+            // 题库过大，超出排序键的表示范围
+            for (int doc = 0; doc < docCount; doc++) {
+                fingerprints.add(new ArrayList<>());
+            }
+            return fingerprints;
+        }
+
+        int[] text = new int[totalLength];
+        int[] docEnd = new int[docCount];
+        int position = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            String stem = normalizedStems.get(doc);
+            for (int i = 0; i < stem.length(); i++) {
+                text[position++] = stem.charAt(i);
+            }
+            docEnd[doc] = position;
+            text[position++] = Character.MAX_VALUE + 1 + doc;
+        }
+
+        int[] suffixArray = buildSuffixArray(text);
+        int[] lcp = buildLcp(text, suffixArray);
+
+        // 每个位置开始的最短唯一子串长度
+        int[] uniqueLength = new int[totalLength];
+        for (int r = 0; r < totalLength; r++) {
+            int previous = lcp[r];
+            int next = r + 1 < totalLength ? lcp[r + 1] : 0;
+            uniqueLength[suffixArray[r]] = Math.max(previous, next) + 1;
+        }
+
+        position = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            int start = position;
+            int end = docEnd[doc];
+
+            // 候选指纹：(长度, 起始位置)，按长度优先、位置其次排序
+            List<int[]> candidates = new ArrayList<>();
+            for (int p = start; p < end; p++) {
+                int length = Math.max(uniqueLength[p], MIN_FINGERPRINT_LENGTH);
+                if (length <= MAX_FINGERPRINT_LENGTH && p + length <= end) {
+                    candidates.add(new int[]{length, p});
+                }
+            }
+            candidates.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+
+            List<String> selected = new ArrayList<>();
+            boolean[] used = new boolean[end - start];
+            String stem = normalizedStems.get(doc);
+            for (int[] candidate : candidates) {
+                if (selected.size() >= MAX_FINGERPRINTS_PER_QUESTION) {
+                    break;
+                }
+                int from = candidate[1] - start;
+                int to = from + candidate[0];
+                boolean overlaps = false;
+                for (int i = from; i < to && !overlaps; i++) {
+                    overlaps = used[i];
+                }
+                if (overlaps) {
+                    continue;
+                }
+                Arrays.fill(used, from, to, true);
+                selected.add(stem.substring(from, to));
+            }
+            fingerprints.add(selected);
+            position = end + 1;
+        }
+        return fingerprints;
+    }
+
+    /**
+     * 倍增法构建后缀数组
+     */
+    private static int[] buildSuffixArray(int[] text) {
+        int n = text.length;
+        int[] suffixArray = new int[n];
+        if (n <= 1) {
+            return suffixArray;
+        }
+        int[] rank = text.clone();
+        long[] keys = new long[n];
+        int[] newRank = new int[n];
+
+        for (int k = 1; ; k <<= 1) {
+            for (int i = 0; i < n; i++) {
+                long second = i + k < n ? rank[i + k] + 1 : 0;
+                keys[i] = (((long) rank[i] << INDEX_BITS | second) << INDEX_BITS) | i;
+            }
+            Arrays.sort(keys);
+
+            long mask = (1L << INDEX_BITS) - 1;
+            int currentRank = 0;
+            for (int r = 0; r < n; r++) {
+                suffixArray[r] = (int) (keys[r] & mask);
+                if (r > 0 && (keys[r] >>> INDEX_BITS) != (keys[r - 1] >>> INDEX_BITS)) {
+                    currentRank++;
+                }
+                newRank[suffixArray[r]] = currentRank;
+            }
+            System.arraycopy(newRank, 0, rank, 0, n);
+            if (currentRank == n - 1) {
+                break;
+            }
+        }
+        return suffixArray;
+    }
+
+    /**
+     * Kasai算法构建LCP数组，lcp[r]为排名r与r-1的后缀的最长公共前缀
+     */
+    private static int[] buildLcp(int[] text, int[] suffixArray) {
+        int n = text.length;
+        int[] rankOf = new int[n];
+        for (int r = 0; r < n; r++) {
+            rankOf[suffixArray[r]] = r;
+        }
+        int[] lcp = new int[n];
+        int h = 0;
+        for (int i = 0; i < n; i++) {
+            if (rankOf[i] > 0) {
+                int j = suffixArray[rankOf[i] - 1];
+                while (i + h < n && j + h < n && text[i + h] == text[j + h]) {
+                    h++;
+                }
+                lcp[rankOf[i]] = h;
+                if (h > 0) {
+                    h--;
+                }
+            } else {
+                h = 0;
+            }
+        }
+        return lcp;
+    }
+
+    private static long edgeKey(int state, char c) {
+        return ((long) state << 16) | c;
+    }
+}
@@ -45,10 +45,17 @@ import android.text.style.UpdateAppearance;
 import androidx.core.app.NotificationCompat;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class FloatingWindowService extends Service {
 
     public static final String ACTION_UPDATE_ANSWER = "com.floatingocrquiz.UPDATE_ANSWER";
     public static final String EXTRA_ANSWER = "answer";
+    // 截图中每道题目的答案（按题目顺序），由悬浮窗排版显示
+    public static final String EXTRA_ANSWERS = "answers";
+    // 答案是否为超时后的初步结果
+    public static final String EXTRA_PARTIAL = "partial";
 
     private static final String TAG = "FloatingWindowService";
     private static final int NOTIFICATION_ID = 1;
@@ -64,6 +71,7 @@ public class FloatingWindowService extends Service {
     private ImageButton captureButton;
     private ImageButton settingsButton;
     private ImageButton closeButton;
+    private TextView categorySwitch;
     
     // 默认截图范围设置
     private static final String PREFS_NAME = "ScreenshotPrefs";
@@ -101,8 +109,12 @@ public class FloatingWindowService extends Service {
             @Override
             public void onReceive(Context context, Intent intent) {
                 if (ACTION_UPDATE_ANSWER.equals(intent.getAction())) {
-                    String answer = intent.getStringExtra(EXTRA_ANSWER);
-                    updateAnswer(answer);
+                    List<String> answers = intent.getStringArrayListExtra(EXTRA_ANSWERS);
+                    if (answers != null) {
+                        updateAnswer(formatAnswers(answers, intent.getBooleanExtra(EXTRA_PARTIAL, false)));
+                    } else {
+                        updateAnswer(intent.getStringExtra(EXTRA_ANSWER));
+                    }
                 }
             }
         };
@@ -192,6 +204,7 @@ public class FloatingWindowService extends Service {
         captureButton = floatingView.findViewById(R.id.capture_button);
         settingsButton = floatingView.findViewById(R.id.settings_button);
         closeButton = floatingView.findViewById(R.id.close_button);
+        categorySwitch = floatingView.findViewById(R.id.category_switch);
 
         // 根据字体大小设置文本大小
         int textSize = 14; // 默认大小
@@ -232,6 +245,10 @@ public class FloatingWindowService extends Service {
             startScreenCapture();
         });
         
+        // 设置类别切换点击事件：在"全部题库"和各类别之间循环切换
+        updateCategorySwitch();
+        categorySwitch.setOnClickListener(v -> switchToNextCategory());
+        
         // 设置关闭按钮点击事件
         closeButton.setOnClickListener(v -> {
             // 停止服务，让onDestroy()方法来统一处理资源清理
@@ -578,6 +595,28 @@ public class FloatingWindowService extends Service {
         }
     }
     
+    /**
+     * 把截图中各道题目的答案排成显示文本，多道题目时在每道题前标注序号
+     * @param answers 每道题目的答案（按题目顺序）
+     * @param partial 是否为初步结果
+     */
+    private String formatAnswers(List<String> answers, boolean partial) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < answers.size(); i++) {
+            if (answers.size() > 1) {
+                if (i > 0) {
+                    sb.append("\n\n");
+                }
+                sb.append("【第").append(i + 1).append("题】\n");
+            }
+            sb.append(answers.get(i));
+        }
+        if (partial) {
+            sb.append("\n（初步结果，正在继续匹配…）");
+        }
+        return sb.toString();
+    }
+    
     public void updateAnswer(String answer) {
         if (answerTextView != null) {
             if (answer == null || answer.isEmpty()) {
@@ -733,6 +772,36 @@ public class FloatingWindowService extends Service {
         captureButton = null;
         settingsButton = null;
         closeButton = null;
+        categorySwitch = null;
+    }
+
+    /**
+     * 切换到下一个题目类别，最后一个类别之后回到全部题库
+     */
+    private void switchToNextCategory() {
+        QuestionBankHelper questionBankHelper = QuestionBankHelper.getInstance(this);
+        List<String> categories = new ArrayList<>();
+        categories.add("");
+        categories.addAll(questionBankHelper.getCategories());
+
+        int currentIndex = categories.indexOf(questionBankHelper.getActiveCategory());
+        String nextCategory = categories.get((currentIndex + 1) % categories.size());
+        questionBankHelper.setActiveCategory(nextCategory);
+        updateCategorySwitch();
+
+        String label = nextCategory.isEmpty() ? getString(R.string.category_all) : nextCategory;
+        Toast.makeText(this, getString(R.string.category_switched, label), Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * 更新类别切换按钮显示的当前类别
+     */
+    private void updateCategorySwitch() {
+        if (categorySwitch == null) {
+            return;
+        }
+        String activeCategory = QuestionBankHelper.getInstance(this).getActiveCategory();
+        categorySwitch.setText(activeCategory.isEmpty() ? getString(R.string.category_all) : activeCategory);
     }
 
     @Override
@@ -0,0 +1,499 @@
+package com.floatingocrquiz;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 压缩的题目ID集合（Roaring位图的简化实现）
+ * ID按高16位分块，每块内的低16位元素较少时使用有序数组，超过4096个时使用64K位的位图，
+ * 集合之间的交、并以及"至少命中k个集合"运算按块进行，只在最后把结果展开成ID列表。
+ * 只支持非负ID。
+ */
+public final class IdBitmap {
+
+    // 数组容器的最大元素数，超过后转换为位图容器（此时两者占用的空间相同）
+    private static final int MAX_ARRAY_SIZE = 4096;
+    // 位图容器的long个数（65536位）
+    private static final int BITMAP_WORDS = 1024;
+
+    // 按升序排列的高16位及其对应的容器
+    private int[] keys = new int[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    /**
+     * 由ID数组构建集合
+     */
+    public static IdBitmap of(int... ids) {
+        IdBitmap bitmap = new IdBitmap();
+        for (int id : ids) {
+            bitmap.add(id);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 添加ID
+     * @param id 非负ID
+     */
+    public void add(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("ID不能为负数: " + id);
+        }
+        int key = id >>> 16;
+        int index = findKey(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key, new ArrayContainer());
+        }
+        containers[index] = containers[index].add((char) id);
+    }
+
+    /**
+     * 判断是否包含ID
+     */
+    public boolean contains(int id) {
+        if (id < 0) {
+            return false;
+        }
+        int index = findKey(id >>> 16);
+        return index >= 0 && containers[index].contains((char) id);
+    }
+
+    /**
+     * 集合中的元素个数
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 交集，返回新的集合
+     */
+    public IdBitmap and(IdBitmap other) {
+        IdBitmap result = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.appendContainer(keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 并集，返回新的集合
+     */
+    public IdBitmap or(IdBitmap other) {
+        IdBitmap result = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j >= other.size || (i < size && keys[i] < other.keys[j])) {
+                result.appendContainer(keys[i], containers[i].copy());
+                i++;
+            } else if (i >= size || keys[i] > other.keys[j]) {
+                result.appendContainer(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.appendContainer(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 计算至少出现在minCount个集合中的ID
+     * minCount为1时等价于并集，等于集合数时等价于交集
+     * @param bitmaps 参与计算的集合
+     * @param minCount 最少命中的集合数
+     * @return 满足条件的ID集合
+     */
+    public static IdBitmap atLeast(List<IdBitmap> bitmaps, int minCount) {
+        IdBitmap result = new IdBitmap();
+        if (minCount > bitmaps.size()) {
+            return result;
+        }
+        if (minCount <= 1) {
+            for (IdBitmap bitmap : bitmaps) {
+                result = result.or(bitmap);
+            }
+            return result;
+        }
+
+        // 逐块计数：只有出现在至少minCount个集合中的块才需要统计块内元素。
+        // 块内用按位切片的计数器（planes[p]为计数的第p位）一次累加64个元素
+        int planeCount = 32 - Integer.numberOfLeadingZeros(bitmaps.size());
+        long[][] planes = new long[planeCount][BITMAP_WORDS];
+        long[] words = new long[BITMAP_WORDS];
+        int[] positions = new int[bitmaps.size()];
+        while (true) {
+            int key = Integer.MAX_VALUE;
+            int blockCount = 0;
+            for (int b = 0; b < bitmaps.size(); b++) {
+                IdBitmap bitmap = bitmaps.get(b);
+                if (positions[b] < bitmap.size) {
+                    int candidate = bitmap.keys[positions[b]];
+                    if (candidate < key) {
+                        key = candidate;
+                        blockCount = 1;
+                    } else if (candidate == key) {
+                        blockCount++;
+                    }
+                }
+            }
+            if (key == Integer.MAX_VALUE) {
+                break;
+            }
+
+            boolean counted = blockCount >= minCount;
+            if (counted) {
+                for (long[] plane : planes) {
+                    Arrays.fill(plane, 0L);
+                }
+            }
+            for (int b = 0; b < bitmaps.size(); b++) {
+                IdBitmap bitmap = bitmaps.get(b);
+                if (positions[b] >= bitmap.size || bitmap.keys[positions[b]] != key) {
+                    continue;
+                }
+                Container block = bitmap.containers[positions[b]++];
+                if (!counted) {
+                    continue;
+                }
+                Arrays.fill(words, 0L);
+                block.orInto(words);
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long carry = words[w];
+                    for (int p = 0; p < planeCount && carry != 0; p++) {
+                        long next = planes[p][w] & carry;
+                        planes[p][w] ^= carry;
+                        carry = next;
+                    }
+                }
+            }
+            if (!counted) {
+                continue;
+            }
+
+            // 按位比较计数与minCount，得到计数不小于minCount的元素
+            long[] resultWords = new long[BITMAP_WORDS];
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                long greater = 0L;
+                long equal = -1L;
+                for (int p = planeCount - 1; p >= 0; p--) {
+                    long bits = planes[p][w];
+                    if (((minCount >>> p) & 1) != 0) {
+                        equal &= bits;
+                    } else {
+                        greater |= equal & bits;
+                        equal &= ~bits;
+                    }
+                }
+                resultWords[w] = greater | equal;
+            }
+            Container container = BitmapContainer.fromWords(resultWords);
+            if (container.cardinality() > 0) {
+                result.appendContainer(key, container);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 展开为升序的ID数组
+     */
+    public int[] toArray() {
+        int[] ids = new int[cardinality()];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int high = keys[i] << 16;
+            for (char value : containers[i].toValues()) {
+                ids[count++] = high | value;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 展开为升序的ID列表
+     */
+    public List<Integer> toList() {
+        int[] ids = toArray();
+        List<Integer> list = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private int findKey(int key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertContainer(int index, int key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    /**
+     * 在末尾追加容器，调用方保证key大于已有的全部key
+     */
+    private void appendContainer(int key, Container container) {
+        insertContainer(size, key, container);
+    }
+
+    /**
+     * 块内低16位元素的容器
+     */
+    private abstract static class Container {
+        /**
+         * 添加元素，容器类型变化时返回新的容器
+         */
+        abstract Container add(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        /**
+         * 升序排列的全部元素
+         */
+        abstract char[] toValues();
+
+        abstract Container copy();
+
+        /**
+         * 把元素按位写入65536位的位图
+         */
+        abstract void orInto(long[] words);
+
+        Container and(Container other) {
+            if (this instanceof BitmapContainer && other instanceof BitmapContainer) {
+                long[] words = ((BitmapContainer) this).words.clone();
+                long[] otherWords = ((BitmapContainer) other).words;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    words[i] &= otherWords[i];
+                }
+                return BitmapContainer.fromWords(words);
+            }
+            // 至少一方是数组容器：遍历较小的一方逐个判断
+            Container small = cardinality() <= other.cardinality() ? this : other;
+            Container large = small == this ? other : this;
+            Container result = new ArrayContainer();
+            for (char value : small.toValues()) {
+                if (large.contains(value)) {
+                    result = result.add(value);
+                }
+            }
+            return result;
+        }
+
+        Container or(Container other) {
+            if (this instanceof BitmapContainer || other instanceof BitmapContainer) {
+                BitmapContainer result = this instanceof BitmapContainer
+                        ? (BitmapContainer) copy() : (BitmapContainer) other.copy();
+                Container rest = this instanceof BitmapContainer ? other : this;
+                for (char value : rest.toValues()) {
+                    result.add(value);
+                }
+                return result;
+            }
+            // 两个有序数组归并
+            char[] a = toValues();
+            char[] b = other.toValues();
+            char[] merged = new char[a.length + b.length];
+            int i = 0;
+            int j = 0;
+            int count = 0;
+            while (i < a.length || j < b.length) {
+                if (j >= b.length || (i < a.length && a[i] < b[j])) {
+                    merged[count++] = a[i++];
+                } else if (i >= a.length || a[i] > b[j]) {
+                    merged[count++] = b[j++];
+                } else {
+                    merged[count++] = a[i++];
+                    j++;
+                }
+            }
+            return ArrayContainer.fromSorted(merged, count);
+        }
+    }
+
+    /**
+     * 有序数组容器，适合稀疏的块
+     */
+    private static final class ArrayContainer extends Container {
+        private char[] values = new char[4];
+        private int cardinality;
+
+        static Container fromSorted(char[] sorted, int count) {
+            if (count > MAX_ARRAY_SIZE) {
+                BitmapContainer bitmap = new BitmapContainer();
+                for (int i = 0; i < count; i++) {
+                    bitmap.add(sorted[i]);
+                }
+                return bitmap;
+            }
+            ArrayContainer container = new ArrayContainer();
+            container.values = Arrays.copyOf(sorted, Math.max(4, count));
+            container.cardinality = count;
+            return container;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality >= MAX_ARRAY_SIZE) {
+                BitmapContainer bitmap = new BitmapContainer();
+                for (int i = 0; i < cardinality; i++) {
+                    bitmap.add(values[i]);
+                }
+                bitmap.add(value);
+                return bitmap;
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, cardinality * 2);
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        char[] toValues() {
+            return Arrays.copyOf(values, cardinality);
+        }
+
+        @Override
+        Container copy() {
+            return fromSorted(values, cardinality);
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+        }
+    }
+
+    /**
+     * 位图容器，适合稠密的块
+     */
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer() {
+            this.words = new long[BITMAP_WORDS];
+        }
+
+        private BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        /**
+         * 由位图构建容器，元素较少时转换为数组容器
+         */
+        static Container fromWords(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            BitmapContainer bitmap = new BitmapContainer(words, cardinality);
+            return cardinality > MAX_ARRAY_SIZE ? bitmap : ArrayContainer.fromSorted(bitmap.toValues(), cardinality);
+        }
+
+        @Override
+        Container add(char value) {
+            long mask = 1L << value;
+            int index = value >>> 6;
+            if ((words[index] & mask) == 0) {
+                words[index] |= mask;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        char[] toValues() {
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[count++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return values;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        void orInto(long[] target) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                target[i] |= words[i];
+            }
+        }
+    }
+}
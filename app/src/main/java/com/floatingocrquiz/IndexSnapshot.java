@@ -0,0 +1,154 @@
+package com.floatingocrquiz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * 检索索引快照
+ * 构建好的QuestionIndex（倒排表、分词词表、指纹自动机、分区等）序列化到应用存储中的文件，
+ * 进程重启后直接映射加载，不再从题目重新构建。
+ * 快照记录构建时数据库的内容修订号（每次写入题目都会增加），修订号不一致时快照作废。
+ *
+ * 文件格式（大端序）：
+ * 文件头：魔数、格式版本、内容修订号、题目数量、数据长度、数据的CRC32
+ * 数据：各个索引结构依次序列化，数组为"长度+元素"，字符串为"字节长度+UTF-8字节"
+ */
+public final class IndexSnapshot {
+
+    // "OCQI"
+    private static final int MAGIC = 0x4F435149;
+    // 索引结构或序列化方式变化时递增，旧快照自动失效
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+
+    private IndexSnapshot() {
+    }
+
+    /**
+     * 把索引写入快照文件，先写入临时文件并同步到磁盘再替换
+     * @param file 快照文件
+     * @param index 构建好的索引
+     * @param contentRevision 构建索引前读取的内容修订号
+     * @param questionCount 构建索引时数据库中的题目数量
+     * @throws IOException 写入失败
+     */
+    public static void save(File file, QuestionIndex index, int contentRevision, int questionCount) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        index.writeTo(out);
+        out.flush();
+        byte[] data = payload.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(contentRevision).putInt(questionCount)
+                .putInt(data.length).putInt((int) crc.getValue());
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+            fileOut.write(header.array());
+            fileOut.write(data);
+            // 确保替换后的文件内容完整，避免断电后留下不完整的快照
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("无法替换索引快照文件: " + file.getPath());
+        }
+    }
+
+    /**
+     * 加载快照文件
+     * @param file 快照文件
+     * @param contentRevision 当前内容修订号
+     * @param questionCount 当前数据库中的题目数量
+     * @return 索引；快照的格式版本、内容修订号或题目数量与当前不一致时返回null
+     * @throws IOException 读取失败、校验和不符或数据损坏
+     */
+    public static QuestionIndex load(File file, int contentRevision, int questionCount) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("索引快照文件大小无效: " + size);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("索引快照文件格式不符");
+            }
+            if (buffer.getInt(4) != FORMAT_VERSION || buffer.getInt(8) != contentRevision
+                    || buffer.getInt(12) != questionCount) {
+                return null;
+            }
+            int length = buffer.getInt(16);
+            if (length != size - HEADER_SIZE) {
+                throw new IOException("索引快照数据长度不符");
+            }
+
+            buffer.position(HEADER_SIZE);
+            ByteBuffer data = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(data.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(20)) {
+                throw new IOException("索引快照校验和不符");
+            }
+            try {
+                return QuestionIndex.readFrom(data);
+            } catch (RuntimeException e) {
+                throw new IOException("索引快照数据损坏: " + e.getMessage());
+            }
+        }
+    }
+
+    static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * 4);
+        return values;
+    }
+
+    static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    static long[] readLongs(ByteBuffer in) {
+        long[] values = new long[in.getInt()];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + values.length * 8);
+        return values;
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
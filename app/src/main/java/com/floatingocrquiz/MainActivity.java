@@ -18,9 +18,8 @@ import android.widget.Toast;
 import android.view.LayoutInflater;
 import androidx.appcompat.app.AlertDialog;
 
+import java.io.BufferedInputStream;
 import java.io.InputStream;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -140,6 +139,21 @@ public class MainActivity extends AppCompatActivity {
                 .show();
     }
     
+    /**
+     * 应用题库增量更新文件
+     */
+    private void applyBankDelta(InputStream inputStream) {
+        QuestionBankImporter.Result result = questionBankHelper.applyBankDelta(inputStream);
+        if (result != null) {
+            Toast.makeText(this,
+                    getString(R.string.delta_success, questionBankHelper.getBankVersion(),
+                            result.inserted + result.updated, result.removed),
+                    Toast.LENGTH_SHORT).show();
+        } else {
+            Toast.makeText(this, R.string.delta_failed, Toast.LENGTH_SHORT).show();
+        }
+    }
+    
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
@@ -163,22 +177,17 @@ public class MainActivity extends AppCompatActivity {
             // 处理导入题库文件
             if (data != null && data.getData() != null) {
                 Uri uri = data.getData();
-                try {
-                    InputStream inputStream = getContentResolver().openInputStream(uri);
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-                    StringBuilder stringBuilder = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        stringBuilder.append(line);
+                try (InputStream inputStream = new BufferedInputStream(getContentResolver().openInputStream(uri))) {
+                    // 增量文件只应用变化的题目
+                    if (QuestionBankImporter.isDelta(inputStream)) {
+                        applyBankDelta(inputStream);
+                        return;
                     }
-                    reader.close();
-                    inputStream.close();
-                    
-                    // 导入题库
-                    int importedCount = questionBankHelper.importQuestionBank(stringBuilder.toString());
-                    if (importedCount > 0) {
+                    // 流式导入题库，不把整个文件读入内存
+                    QuestionBankImporter.Result result = questionBankHelper.importQuestionBank(inputStream);
+                    if (result != null && result.inserted + result.updated + result.skipped > 0) {
                         Toast.makeText(this, 
-                                getString(R.string.import_success, importedCount), 
+                                getString(R.string.import_success, result.inserted, result.updated, result.skipped), 
                                 Toast.LENGTH_SHORT).show();
                     } else {
                         Toast.makeText(this, R.string.import_failed, Toast.LENGTH_SHORT).show();
@@ -0,0 +1,50 @@
+package com.floatingocrquiz;
+
+/**
+ * 题目匹配的截止时间
+ * 由调用方创建并传入查询接口，检索和打分的各阶段在开始耗时操作前检查，
+ * 超时后不再继续检索，直接返回当前已找到的最佳结果并标记为不完整。
+ */
+public final class MatchDeadline {
+
+    private static final MatchDeadline NONE = new MatchDeadline(Long.MAX_VALUE);
+
+    // System.nanoTime()时间点，Long.MAX_VALUE表示不限时
+    private final long deadlineNanos;
+
+    private MatchDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 从当前时刻起经过指定毫秒后截止
+     * @param budgetMillis 时间预算（毫秒）
+     */
+    public static MatchDeadline after(long budgetMillis) {
+        return new MatchDeadline(System.nanoTime() + budgetMillis * 1_000_000L);
+    }
+
+    /**
+     * 不限时
+     */
+    public static MatchDeadline none() {
+        return NONE;
+    }
+
+    /**
+     * 是否已经超过截止时间
+     */
+    public boolean isExpired() {
+        return deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * 距截止时间剩余的毫秒数，不限时返回Long.MAX_VALUE，已超时返回0
+     */
+    public long remainingMillis() {
+        if (deadlineNanos == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0L, (deadlineNanos - System.nanoTime()) / 1_000_000L);
+    }
+}
@@ -0,0 +1,164 @@
+package com.floatingocrquiz;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 数字特征提取器
+ * 从题干中提取"数值+单位"形式的特征（如0.7m、10kv、24h），用于区分只有数字不同的安规题目。
+ * 支持全角数字、OCR清理后以"。"表示的小数点，以及"10~35kV"这类共用单位的数值范围。
+ */
+public final class NumericTokenizer {
+
+    // 单位别名 -> 规范单位，匹配时优先尝试较长的别名
+    private static final Map<String, String> UNITS = new LinkedHashMap<>();
+    private static final String[] UNIT_ALIASES;
+
+    static {
+        String[][] units = {
+                {"千伏", "kv"}, {"kv", "kv"}, {"伏", "v"}, {"v", "v"},
+                {"毫米", "mm"}, {"mm", "mm"}, {"厘米", "cm"}, {"cm", "cm"},
+                {"千米", "km"}, {"公里", "km"}, {"km", "km"},
+                {"米/秒", "m/s"}, {"m/s", "m/s"}, {"米", "m"}, {"m", "m"},
+                {"兆瓦", "mw"}, {"mw", "mw"}, {"千瓦", "kw"}, {"kw", "kw"}, {"kva", "kva"},
+                {"毫安", "ma"}, {"ma", "ma"}, {"安", "a"}, {"a", "a"},
+                {"兆帕", "mpa"}, {"mpa", "mpa"}, {"千帕", "kpa"}, {"kpa", "kpa"},
+                {"公斤", "kg"}, {"千克", "kg"}, {"kg", "kg"}, {"吨", "t"},
+                {"%", "%"}, {"％", "%"}, {"℃", "℃"}, {"°", "°"}, {"度", "°"},
+                {"秒", "s"}, {"s", "s"}, {"分钟", "min"}, {"min", "min"}, {"小时", "h"}, {"h", "h"},
+                {"天", "d"}, {"日", "d"}, {"周", "周"}, {"个月", "月"}, {"月", "月"}, {"年", "年"},
+                {"次", "次"}, {"人", "人"}, {"名", "人"}, {"级", "级"}, {"倍", "倍"}, {"根", "根"}, {"处", "处"}
+        };
+        for (String[] unit : units) {
+            UNITS.put(unit[0], unit[1]);
+        }
+        UNIT_ALIASES = UNITS.keySet().toArray(new String[0]);
+        Arrays.sort(UNIT_ALIASES, (a, b) -> Integer.compare(b.length(), a.length()));
+    }
+
+    private NumericTokenizer() {
+    }
+
+    /**
+     * 提取文本中的数字特征
+     * @param text 题干或OCR文本
+     * @return 规范化的特征列表（去重，按出现顺序），如"0.7m"、"10kv"
+     */
+    public static List<String> extract(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+
+        // 等待单位的数值（数值范围中前面的数值与最后一个数值共用单位）
+        List<String> pendingValues = new ArrayList<>();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            if (!isDigit(text.charAt(i))) {
+                i++;
+                continue;
+            }
+
+            // 读取数值，数字之间的句号视为小数点
+            StringBuilder number = new StringBuilder();
+            boolean hasDecimalPoint = false;
+            while (i < length) {
+                char c = text.charAt(i);
+                if (isDigit(c)) {
+                    number.append(toHalfWidthDigit(c));
+                    i++;
+                } else if (!hasDecimalPoint && isDecimalPoint(c) && i + 1 < length && isDigit(text.charAt(i + 1))) {
+                    number.append('.');
+                    hasDecimalPoint = true;
+                    i++;
+                } else {
+                    break;
+                }
+            }
+            pendingValues.add(canonicalValue(number.toString()));
+
+            int unitStart = skipSpaces(text, i);
+            String unit = matchUnit(text, unitStart);
+            int nextValue = unitStart < length && isRangeSeparator(text.charAt(unitStart))
+                    ? skipSpaces(text, unitStart + 1) : length;
+            if (unit == null && nextValue < length && isDigit(text.charAt(nextValue))) {
+                // 数值范围，如"10~35kv"，等待后面的单位
+                i = nextValue;
+                continue;
+            }
+
+            String canonicalUnit = unit == null ? "" : UNITS.get(unit);
+            for (String value : pendingValues) {
+                String token = value + canonicalUnit;
+                if (!tokens.contains(token)) {
+                    tokens.add(token);
+                }
+            }
+            pendingValues.clear();
+            i = unit == null ? i : unitStart + unit.length();
+        }
+        return tokens;
+    }
+
+    /**
+     * 在start位置匹配最长的单位别名，ASCII单位后面不能紧跟字母
+     */
+    private static String matchUnit(String text, int start) {
+        String lower = text.substring(start, Math.min(text.length(), start + 3)).toLowerCase();
+        for (String alias : UNIT_ALIASES) {
+            if (!lower.startsWith(alias)) {
+                continue;
+            }
+            int end = start + alias.length();
+            boolean asciiUnit = alias.charAt(alias.length() - 1) < 128 && Character.isLetter(alias.charAt(alias.length() - 1));
+            if (asciiUnit && end < text.length() && isAsciiLetter(text.charAt(end))) {
+                continue;
+            }
+            return alias;
+        }
+        return null;
+    }
+
+    /**
+     * 数值规范化：去掉多余的前导零和小数末尾的零，如"0.50"与"00.5"均为"0.5"
+     */
+    private static String canonicalValue(String number) {
+        try {
+            return new BigDecimal(number).stripTrailingZeros().toPlainString();
+        } catch (NumberFormatException e) {
+            return number;
+        }
+    }
+
+    private static int skipSpaces(String text, int index) {
+        while (index < text.length() && text.charAt(index) == ' ') {
+            index++;
+        }
+        return index;
+    }
+
+    private static boolean isDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= '０' && c <= '９');
+    }
+
+    private static char toHalfWidthDigit(char c) {
+        return c >= '０' && c <= '９' ? (char) (c - '０' + '0') : c;
+    }
+
+    private static boolean isDecimalPoint(char c) {
+        return c == '.' || c == '。' || c == '．';
+    }
+
+    private static boolean isRangeSeparator(char c) {
+        return c == '~' || c == '～' || c == '-' || c == '－' || c == '—' || c == '至' || c == '到';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
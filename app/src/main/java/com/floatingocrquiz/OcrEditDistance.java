@@ -0,0 +1,148 @@
+package com.floatingocrquiz;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 带OCR混淆代价的有界编辑距离
+ * 只计算对角线附近宽度为k的带状区域（Ukkonen），代价超过上限后立即返回，
+ * 用于选项比较和短题干匹配，代替完整的多指标相似度计算。
+ * 代价以整数计：插入、删除、普通替换为2，OCR常见混淆字符之间的替换为1。
+ */
+public final class OcrEditDistance {
+
+    // 插入/删除代价
+    private static final int INDEL_COST = 2;
+    // 普通替换代价
+    private static final int SUBSTITUTION_COST = 2;
+    // OCR混淆字符之间的替换代价
+    private static final int CONFUSION_COST = 1;
+
+    // 判定为同一选项时允许的错误比例
+    private static final double OPTION_ERROR_RATIO = 0.1;
+
+    // OCR常见混淆字符组，同组内任意两个字符互相替换按混淆代价计算
+    private static final String[] CONFUSION_GROUPS = {
+            "己已巳", "未末", "0oO", "l1iI|", "人入八", "日曰", "士土", "大太犬",
+            "干千于", "天夭", "戊戌戍", "刀力", "口囗", "侯候", "拔拨", "汩汨",
+            "5s", "2z", "8b", "6g", "9q"
+    };
+
+    // 混淆字符对（较小字符<<16 | 较大字符）
+    private static final Set<Integer> CONFUSION_PAIRS = new HashSet<>();
+
+    static {
+        for (String group : CONFUSION_GROUPS) {
+            for (int i = 0; i < group.length(); i++) {
+                for (int j = i + 1; j < group.length(); j++) {
+                    CONFUSION_PAIRS.add(pairKey(group.charAt(i), group.charAt(j)));
+                }
+            }
+        }
+    }
+
+    private OcrEditDistance() {
+    }
+
+    /**
+     * 计算加权编辑距离，超过上限时提前结束
+     * @param a 文本1
+     * @param b 文本2
+     * @param maxCost 代价上限
+     * @return 编辑代价，超过上限时返回maxCost + 1
+     */
+    public static int distance(CharSequence a, CharSequence b, int maxCost) {
+        int m = a.length();
+        int n = b.length();
+        int exceeded = maxCost + 1;
+        if (maxCost < 0) {
+            return exceeded;
+        }
+        if (Math.abs(m - n) * INDEL_COST > maxCost) {
+            return exceeded;
+        }
+        if (m == 0 || n == 0) {
+            return Math.max(m, n) * INDEL_COST;
+        }
+
+        // 超过带宽的对角线至少需要band+1次插入或删除，代价必然超过上限
+        int band = maxCost / INDEL_COST;
+        int[] previous = new int[n + 1];
+        int[] current = new int[n + 1];
+        for (int j = 0; j <= n; j++) {
+            previous[j] = j <= band ? j * INDEL_COST : exceeded;
+        }
+
+        for (int i = 1; i <= m; i++) {
+            int from = Math.max(1, i - band);
+            int to = Math.min(n, i + band);
+            current[0] = i <= band ? i * INDEL_COST : exceeded;
+            if (from > 1) {
+                current[from - 1] = exceeded;
+            }
+
+            int rowMin = current[0];
+            char ca = a.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cost = previous[j - 1] + substitutionCost(ca, b.charAt(j - 1));
+                cost = Math.min(cost, previous[j] + INDEL_COST);
+                cost = Math.min(cost, current[j - 1] + INDEL_COST);
+                current[j] = Math.min(cost, exceeded);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (to < n) {
+                current[to + 1] = exceeded;
+            }
+
+            // 整行都超过上限时，后续行只会更大
+            if (rowMin > maxCost) {
+                return exceeded;
+            }
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        return Math.min(previous[n], exceeded);
+    }
+
+    /**
+     * 计算归一化的相似度（1 - 代价 / 最大可能代价）
+     * @param minSimilarity 需要的最低相似度，低于该值时提前结束并返回0
+     * @return 相似度，范围[0, 1]
+     */
+    public static double similarity(String a, String b, double minSimilarity) {
+        int maxLength = Math.max(a.length(), b.length());
+        if (maxLength == 0) {
+            return 1.0;
+        }
+        int worstCost = maxLength * INDEL_COST;
+        int maxCost = (int) Math.floor((1.0 - minSimilarity) * worstCost);
+        int cost = distance(a, b, maxCost);
+        if (cost > maxCost) {
+            return 0.0;
+        }
+        return 1.0 - (double) cost / worstCost;
+    }
+
+    /**
+     * 判断两个选项是否为同一选项（允许约10%的编辑错误，至少允许一处OCR混淆）
+     */
+    public static boolean isSameOption(String a, String b) {
+        int maxLength = Math.max(a.length(), b.length());
+        int maxCost = Math.max(CONFUSION_COST, (int) (maxLength * INDEL_COST * OPTION_ERROR_RATIO));
+        return distance(a, b, maxCost) <= maxCost;
+    }
+
+    private static int substitutionCost(char a, char b) {
+        if (a == b) {
+            return 0;
+        }
+        return CONFUSION_PAIRS.contains(pairKey(a, b)) ? CONFUSION_COST : SUBSTITUTION_COST;
+    }
+
+    private static int pairKey(char a, char b) {
+        return a < b ? (a << 16) | b : (b << 16) | a;
+    }
+}
@@ -0,0 +1,158 @@
+package com.floatingocrquiz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * OCR文本选项标记扫描器
+ * 从左到右扫描一次文本，识别全部支持的选项标记格式，同时得到题干范围和各选项范围，
+ * 代替依次尝试多个带回溯的正则表达式，耗时与文本长度成线性关系。
+ * 支持的标记格式：
+ * 1. 字母+句号：A.、A．、a.
+ * 2. 括号+字母（可带句号）：（A）、(A)、【A】、[A]、（A）.
+ * 3. 数字+句号：1.、1．
+ * 4. 字母+右括号：A）、A)
+ */
+public final class OptionLexer {
+
+    // 标记格式，按提取选项时的优先级排列
+    private static final int STYLE_LETTER_DOT = 0;
+    private static final int STYLE_BRACKET = 1;
+    private static final int STYLE_DIGIT_DOT = 2;
+    private static final int STYLE_LETTER_PAREN = 3;
+    private static final int STYLE_COUNT = 4;
+
+    private OptionLexer() {
+    }
+
+    /**
+     * 扫描OCR文本，拆分出题干和选项
+     * @param text 清理后的OCR文本
+     * @return 扫描结果
+     */
+    public static Result scan(String text) {
+        if (text == null || text.isEmpty()) {
+            return new Result("", new ArrayList<>());
+        }
+
+        // 各格式的选项标记位置：markerStarts为标记起始位置，markerEnds为选项内容起始位置
+        List<List<int[]>> markers = new ArrayList<>(STYLE_COUNT);
+        for (int style = 0; style < STYLE_COUNT; style++) {
+            markers.add(new ArrayList<>());
+        }
+        int stemEnd = -1;
+
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            int style = -1;
+            int end = i;
+            boolean optionLabel = false;
+
+            if (isOpenBracket(c) && i + 2 < length && isLetter(text.charAt(i + 1))
+                    && isMatchingClose(c, text.charAt(i + 2))) {
+                // （A）、【A】，后面可以紧跟句号
+                style = STYLE_BRACKET;
+                optionLabel = isOptionLetter(text.charAt(i + 1));
+                end = i + 3;
+                if (end < length && isPeriod(text.charAt(end))) {
+                    end++;
+                }
+            } else if (isLetter(c) && i + 1 < length && (i == 0 || !isLetter(text.charAt(i - 1)))) {
+                char next = text.charAt(i + 1);
+                if (isPeriod(next)) {
+                    style = STYLE_LETTER_DOT;
+                } else if (isCloseParen(next) && (i == 0 || !isOpenBracket(text.charAt(i - 1)))) {
+                    style = STYLE_LETTER_PAREN;
+                }
+                optionLabel = isOptionLetter(c);
+                end = i + 2;
+            } else if (isDigit(c) && i + 1 < length && isPeriod(text.charAt(i + 1))
+                    && (i == 0 || !isDigit(text.charAt(i - 1)))
+                    && (i + 2 >= length || !isDigit(text.charAt(i + 2)))) {
+                // 后面紧跟数字时是小数（如"0。7米"），不是选项标记
+                style = STYLE_DIGIT_DOT;
+                optionLabel = c >= '1' && c <= '7';
+                end = i + 2;
+            }
+
+            if (style < 0) {
+                i++;
+                continue;
+            }
+
+            // 任意格式的第一个标记之前都是题干
+            if (stemEnd < 0) {
+                stemEnd = i;
+            }
+            if (optionLabel) {
+                markers.get(style).add(new int[]{i, end});
+            }
+            i = end;
+        }
+
+        String stem = stemEnd < 0 ? text : text.substring(0, stemEnd).trim();
+
+        // 按优先级选择第一种出现过的格式，相邻两个同格式标记之间的文本即为选项内容
+        List<String> options = new ArrayList<>();
+        for (int style = 0; style < STYLE_COUNT && options.isEmpty(); style++) {
+            List<int[]> styleMarkers = markers.get(style);
+            for (int m = 0; m < styleMarkers.size(); m++) {
+                int contentStart = styleMarkers.get(m)[1];
+                int contentEnd = m + 1 < styleMarkers.size() ? styleMarkers.get(m + 1)[0] : length;
+                String option = text.substring(contentStart, contentEnd).trim();
+                if (!option.isEmpty()) {
+                    options.add(option);
+                }
+            }
+        }
+
+        return new Result(stem, options);
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isOptionLetter(char c) {
+        return (c >= 'a' && c <= 'g') || (c >= 'A' && c <= 'G');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isPeriod(char c) {
+        return c == '.' || c == '。' || c == '．';
+    }
+
+    private static boolean isCloseParen(char c) {
+        return c == ')' || c == '）';
+    }
+
+    private static boolean isOpenBracket(char c) {
+        return c == '(' || c == '（' || c == '[' || c == '【';
+    }
+
+    private static boolean isMatchingClose(char open, char close) {
+        if (open == '(' || open == '（') {
+            return close == ')' || close == '）';
+        }
+        return close == ']' || close == '】';
+    }
+
+    /**
+     * 扫描结果：题干和按出现顺序排列的选项内容
+     */
+    public static class Result {
+        public final String stem;
+        public final List<String> options;
+
+        Result(String stem, List<String> options) {
+            this.stem = stem;
+            this.options = Collections.unmodifiableList(options);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.floatingocrquiz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 单次查询的OCR文本分析结果
+ * 每次截图只构建一次，在检索、打分和格式化答案之间共享，
+ * 逐个候选题目打分时只需处理题库一侧的数据。
+ */
+public final class QueryAnalysis {
+
+    // 判断题的选项内容
+    private static final Pattern TRUE_FALSE_OPTION = Pattern.compile("^(?:对|错|正确|错误|√|×)[。.]?$");
+    // 没有选项标记时文末的判断标记，如"对 错"、"√ ×"
+    private static final Pattern TRUE_FALSE_TAIL = Pattern.compile("(?:对|正确|√)\\s*(?:错|错误|×)\\s*$");
+    // 题干中的填空括号，选择题和判断题通常带有，简答题没有
+    private static final Pattern BLANK_CUE = Pattern.compile("[（(]\\s*[）)]|_{2,}");
+    // 没有选项和填空括号时视为简答题的最短题干长度
+    private static final int SHORT_ANSWER_MIN_LENGTH = 30;
+
+    // 清理后的完整OCR文本（包含选项）
+    public final String cleanedText;
+    // 纯问题内容（去除选项）
+    public final String pureQuestion;
+    // 相似度计算用的预处理题干
+    public final String processedStem;
+    // OCR文本中提取的原始选项及其清理结果
+    public final List<String> options;
+    public final List<String> cleanedOptions;
+    // 从完整文本提取的关键词，用于相似度中的关键词得分
+    public final List<String> keywords;
+    // 长度足够的核心关键词，用于数据库粗筛
+    public final List<String> coreKeywords;
+    // 归一化后的题干，用于指纹扫描
+    public final String normalizedStem;
+    // 题干归一化后的字符二元组，用于BM25检索
+    public final int[] stemBigrams;
+    // 题干中的数字特征（数值+单位）
+    public final List<String> numericTokens;
+    // 根据选项、判断标记和题干长度推断的可能题型，为空表示无法推断
+    public final Set<QuestionBankHelper.QuestionType> likelyTypes;
+
+    QueryAnalysis(String cleanedText, String pureQuestion, String processedStem,
+                  List<String> options, List<String> cleanedOptions,
+                  List<String> keywords, List<String> coreKeywords, String normalizedStem,
+                  String typeHeader) {
+        this.cleanedText = cleanedText;
+        this.pureQuestion = pureQuestion;
+        this.processedStem = processedStem;
+        this.options = Collections.unmodifiableList(new ArrayList<>(options));
+        this.cleanedOptions = Collections.unmodifiableList(new ArrayList<>(cleanedOptions));
+        this.keywords = Collections.unmodifiableList(new ArrayList<>(keywords));
+        this.coreKeywords = Collections.unmodifiableList(new ArrayList<>(coreKeywords));
+        this.normalizedStem = normalizedStem;
+        this.stemBigrams = TextNormalizer.bigrams(normalizedStem);
+        this.numericTokens = Collections.unmodifiableList(NumericTokenizer.extract(pureQuestion));
+        this.likelyTypes = Collections.unmodifiableSet(inferTypes(cleanedText, pureQuestion, this.cleanedOptions, typeHeader));
+    }
+
+    /**
+     * 推断OCR文本可能的题型：题型标题最可靠，其次是选项内容，没有选项时按判断标记和题干长度推断
+     * @param typeHeader 多题分割时题目之前的题型标题，没有时为null
+     */
+    private static Set<QuestionBankHelper.QuestionType> inferTypes(String cleanedText, String pureQuestion,
+                                                                  List<String> cleanedOptions, String typeHeader) {
+        // 分割时去掉的题型标题优先，其次是题目文本中带的标题
+        if (typeHeader != null) {
+            Set<QuestionBankHelper.QuestionType> headerTypes = typesFromHeader(typeHeader);
+            if (headerTypes != null) {
+                return headerTypes;
+            }
+        }
+        Set<QuestionBankHelper.QuestionType> headerTypes = typesFromHeader(cleanedText);
+        if (headerTypes != null) {
+            return headerTypes;
+        }
+
+        if (cleanedOptions.size() >= 2) {
+            boolean trueFalseOptions = true;
+            for (String option : cleanedOptions) {
+                if (!TRUE_FALSE_OPTION.matcher(option.trim()).matches()) {
+                    trueFalseOptions = false;
+                    break;
+                }
+            }
+            return trueFalseOptions ? EnumSet.of(QuestionBankHelper.QuestionType.TRUE_FALSE)
+                    : EnumSet.of(QuestionBankHelper.QuestionType.SINGLE, QuestionBankHelper.QuestionType.MULTIPLE);
+        }
+
+        if (TRUE_FALSE_TAIL.matcher(cleanedText).find()) {
+            return EnumSet.of(QuestionBankHelper.QuestionType.TRUE_FALSE);
+        }
+        // 选项可能没有截到，只有足够长且不带填空括号的题干才视为简答题
+        if (cleanedOptions.isEmpty() && pureQuestion.length() >= SHORT_ANSWER_MIN_LENGTH
+                && !BLANK_CUE.matcher(pureQuestion).find()) {
+            return EnumSet.of(QuestionBankHelper.QuestionType.SHORT);
+        }
+        return EnumSet.noneOf(QuestionBankHelper.QuestionType.class);
+    }
+
+    /**
+     * 根据文本中的题型标题推断题型
+     * @return 题型，文本中没有题型标题时返回null
+     */
+    private static Set<QuestionBankHelper.QuestionType> typesFromHeader(String text) {
+        if (text.contains("判断题")) {
+            return EnumSet.of(QuestionBankHelper.QuestionType.TRUE_FALSE);
+        }
+        if (text.contains("简答题") || text.contains("问答题")) {
+            return EnumSet.of(QuestionBankHelper.QuestionType.SHORT);
+        }
+        if (text.contains("多选题") || text.contains("多项选择题")) {
+            return EnumSet.of(QuestionBankHelper.QuestionType.MULTIPLE);
+        }
+        if (text.contains("单选题") || text.contains("单项选择题")) {
+            return EnumSet.of(QuestionBankHelper.QuestionType.SINGLE);
+        }
+        return null;
+    }
+}
@@ -2,17 +2,18 @@ package com.floatingocrquiz;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.text.TextUtils;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
@@ -22,19 +23,97 @@ import java.util.regex.Pattern;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class QuestionBankHelper {
     private static final String TAG = "com.floatingocrquiz.QuestionBankHelper";
     private static final String FILE_NAME = "question_bank.json";
     
+    // BM25检索后进入完整相似度重排的候选数量
+    private static final int BM25_RERANK_SIZE = 20;
+    
+    // BM25命中题目至少要覆盖的查询二元组比例，只有零星二元组重合的命中不算，交给关键词检索和全量扫描
+    private static final float MIN_BM25_COVERAGE = 0.3f;
+    // 关键词最小长度（词表分词后的短词）
+    private static final int MIN_KEYWORD_LENGTH = 2;
+    // 关键词粗筛的最大候选数量
+    private static final int MAX_KEYWORD_CANDIDATES = 100;
+    // 全题库扫描时得分达到该值即视为确定匹配，不再扫描剩余题目
+    private static final double FULL_SCAN_CONFIDENT_SCORE = 0.9;
+    // 文档频率超过该比例的词在题库中区分度太低，不作为关键词
+    private static final double MAX_KEYWORD_DOC_RATIO = 0.3;
+    // 不超过该长度的短文本直接使用OCR编辑距离计算相似度
+    private static final int SHORT_TEXT_LENGTH = 8;
+    
+    // 最佳得分超过该值才视为匹配成功
+    private static final double MATCH_THRESHOLD = 0.15;
+    
+    // 渐进匹配：最佳得分达到接受阈值，且领先剩余候选得分上界至少margin时停止打分
+    private static final String PREF_PROGRESSIVE_ACCEPT_SCORE = "progressive_accept_score";
+    private static final String PREF_PROGRESSIVE_MARGIN = "progressive_margin";
+    private static final float DEFAULT_PROGRESSIVE_ACCEPT_SCORE = 0.6f;
+    private static final float DEFAULT_PROGRESSIVE_MARGIN = 0.05f;
+    // 选项匹配奖励的最大值
+    private static final double MAX_OPTION_MATCH_BONUS = 0.3;
+    
+    // 数字特征过滤方式：weighted按命中比例加分，hard只保留命中数最多的候选
+    private static final String PREF_NUMERIC_FILTER_MODE = "numeric_filter_mode";
+    private static final String NUMERIC_FILTER_HARD = "hard";
+    private static final String NUMERIC_FILTER_WEIGHTED = "weighted";
+    // 数字特征全部命中时的加分
+    private static final double NUMERIC_MATCH_WEIGHT = 0.15;
+    
+    // 当前启用的题目类别（空字符串表示全部题库）
+    private static final String PREF_ACTIVE_CATEGORY = "active_category";
+    // 从题干引导语中推断类别，如"依据《变电安规》，..."
+    private static final Pattern CATEGORY_PATTERN = Pattern.compile(
+            "^\\s*(?:依据|根据|按照)《?([^，,。《》\\s]{2,12})》?[，,]");
+    
     private static QuestionBankHelper instance;
     private DBHelper dbHelper;
     private Context context;
+    // 内存检索索引，首次查询时构建，题库变更后失效
+    private volatile QuestionIndex questionIndex;
+    // 二进制题库文件，构建索引时写入，启动时映射后直接读取题目，题库变更后删除
+    private static final String BINARY_BANK_FILE_NAME = "question_bank.bin";
+    private volatile BinaryQuestionBank binaryBank;
+    // 检索索引快照文件，构建索引后写入，启动时内容修订号和题目数量一致则直接加载，题库变更后删除
+    private static final String INDEX_SNAPSHOT_FILE_NAME = "question_index.snap";
+    // 题库类别列表，加载或构建索引时从索引分区中取得，题库变更后清空
+    private volatile List<String> categories;
+    
+    // 会话窗口：上一次匹配题目之后的若干道题，按题库顺序答题时优先匹配
+    private static final int SESSION_WINDOW_SIZE = 3;
+    private static final double SESSION_EARLY_ACCEPT_SCORE = 0.85;
+    private volatile int lastMatchedId = -1;
+    private volatile List<CandidateFeatures> sessionWindow = new ArrayList<>();
+    // 后台预取会话窗口特征的线程
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+    
+    // 启动时预加载的常用题目数量（按查询记录中的命中次数）
+    private static final int HOT_QUESTION_COUNT = 50;
+    // 常用题目的精确匹配表：归一化题干 -> 题干相同的题目及其特征，启动时在后台预加载
+    private volatile Map<String, List<CandidateFeatures>> hotQuestions = new HashMap<>();
+    // 查询记录的后台批量写入器
+    private final CaptureHistoryWriter captureHistoryWriter;
+    // 一次截图包含多道题目时并行匹配的线程池
+    private static final int MAX_MATCH_THREADS = 4;
+    private final ExecutorService matchExecutor = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(MAX_MATCH_THREADS, Runtime.getRuntime().availableProcessors())));
 
     private QuestionBankHelper(Context context) {
         this.context = context;
         this.dbHelper = new DBHelper(context);
+        this.captureHistoryWriter = new CaptureHistoryWriter(dbHelper);
         loadQuestionBank();
+        openBinaryBank();
+        // 在后台构建索引并预加载常用题目，会话中的第一次截图不必等待
+        prefetchExecutor.execute(this::warmCaches);
     }
     
     /**
@@ -59,151 +138,289 @@ public class QuestionBankHelper {
             return;
         }
 
+        // 流式解析，逐块写入数据库
+        try (InputStream is = context.getAssets().open(FILE_NAME);
+             Reader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"))) {
+            QuestionBankImporter.Result result = new QuestionBankImporter(dbHelper, true).importFrom(reader);
+            Log.d(TAG, "从JSON导入内置题库完成，" + result);
+        } catch (IOException | RuntimeException e) {
+            // 数值字段格式错误时JsonReader抛出NumberFormatException，同样按解析失败处理
+            Log.e(TAG, "加载题库失败: " + e.getMessage());
+            e.printStackTrace();
+            // 已经提交的部分题目使磁盘上的二进制题库和索引快照失效
+            invalidateQuestionIndex();
+        }
+    }
+
+    /**
+     * 映射上次写入的二进制题库，文件的内容修订号、题目数量与数据库不一致或校验失败时删除，
+     * 下次构建索引时重新写入
+     */
+    private void openBinaryBank() {
+        File file = getBinaryBankFile();
+        if (!file.exists()) {
+            return;
+        }
         try {
-            InputStream is = context.getAssets().open(FILE_NAME);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
+            BinaryQuestionBank bank = BinaryQuestionBank.open(file, dbHelper.getContentRevision());
+            if (bank == null || bank.size() != dbHelper.getQuestionCount()) {
+                Log.w(TAG, "二进制题库与数据库内容不一致，重新生成");
+                discardBinaryBank();
+                return;
             }
-            
-            reader.close();
-            is.close();
-            
-            // 解析JSON
-            JSONObject jsonObject = new JSONObject(sb.toString());
-            JSONArray questionsArray = jsonObject.getJSONArray("questions");
-            
-            List<Question> tempQuestions = new ArrayList<>();
-            for (int i = 0; i < questionsArray.length(); i++) {
-                JSONObject questionObj = questionsArray.getJSONObject(i);
-                Question question = new Question();
-                
-                question.id = questionObj.getInt("id");
-                question.type = QuestionType.valueOf(questionObj.getString("type"));
-                question.question = questionObj.getString("question");
-                
-                // 解析选项
-                if (questionObj.has("options")) {
-                    JSONArray optionsArray = questionObj.getJSONArray("options");
-                    List<String> options = new ArrayList<>();
-                    for (int j = 0; j < optionsArray.length(); j++) {
-                        options.add(optionsArray.getString(j));
-                    }
-                    question.options = options;
-                }
-                
-                question.answer = questionObj.getString("answer");
-                
-                // 输入验证：检查内容长度
-                boolean isValid = true;
-                
-                // 检查题干长度（最大600字符）
-                if (question.question != null && question.question.length() > 600) {
-                    Log.w(TAG, "题目题干过长 (ID: " + question.id + ", Length: " + question.question.length() + ")，已跳过");
-                    isValid = false;
-                }
-                
-                // 检查选项长度（转换为JSON字符串后最大250字符）
-                if (isValid && question.options != null) {
-                    String optionsJson = question.options.toString();
-                    if (optionsJson.length() > 250) {
-                        Log.w(TAG, "题目选项过长 (ID: " + question.id + ", Length: " + optionsJson.length() + ")，已跳过");
-                        isValid = false;
-                    }
-                }
-                
-                // 检查答案长度（最大1000字符）
-                if (isValid && question.answer != null && question.answer.length() > 1000) {
-                    Log.w(TAG, "题目答案过长 (ID: " + question.id + ", Length: " + question.answer.length() + ")，已跳过");
-                    isValid = false;
-                }
-                
-                if (isValid) {
-                    tempQuestions.add(question);
-                }
+            binaryBank = bank;
+            Log.d(TAG, "已映射二进制题库，共 " + bank.size() + " 道题目");
+        } catch (IOException e) {
+            Log.w(TAG, "映射二进制题库失败: " + e.getMessage());
+            discardBinaryBank();
+        }
+    }
+
+    /**
+     * 把题库写成二进制文件并映射，之后的题目读取不再查询数据库
+     * @param contentRevision 读取题目前的数据库内容修订号
+     */
+    private void writeBinaryBank(List<Question> questions, int contentRevision) {
+        if (questions.isEmpty()) {
+            return;
+        }
+        File file = getBinaryBankFile();
+        try {
+            long startTime = System.currentTimeMillis();
+            BinaryQuestionBank.write(file, questions, contentRevision);
+            binaryBank = BinaryQuestionBank.open(file, contentRevision);
+            Log.d(TAG, "写入二进制题库完成，共 " + questions.size() + " 道题目，耗时 "
+                    + (System.currentTimeMillis() - startTime) + "ms");
+        } catch (IOException e) {
+            Log.w(TAG, "写入二进制题库失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 停止使用并删除二进制题库文件（已映射的页面在删除后仍然可读）
+     */
+    private void discardBinaryBank() {
+        binaryBank = null;
+        File file = getBinaryBankFile();
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "删除二进制题库文件失败");
+        }
+    }
+
+    private File getBinaryBankFile() {
+        return new File(context.getFilesDir(), BINARY_BANK_FILE_NAME);
+    }
+
+    /**
+     * 加载上次保存的索引快照
+     * @return 索引；快照不存在、已过期或损坏时返回null（过期或损坏的快照会被删除）
+     */
+    private QuestionIndex loadIndexSnapshot(int contentRevision, int questionCount) {
+        File file = getIndexSnapshotFile();
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            QuestionIndex index = IndexSnapshot.load(file, contentRevision, questionCount);
+            if (index == null) {
+                Log.d(TAG, "索引快照与当前题库内容不一致，重新构建");
+                discardIndexSnapshot();
+            }
+            return index;
+        } catch (IOException e) {
+            Log.w(TAG, "加载索引快照失败: " + e.getMessage());
+            discardIndexSnapshot();
+            return null;
+        }
+    }
+
+    /**
+     * 保存索引快照
+     * @param contentRevision 构建索引前读取的内容修订号
+     * @param questionCount 构建索引前读取的题目数量
+     */
+    private void saveIndexSnapshot(QuestionIndex index, int contentRevision, int questionCount) {
+        if (index.size() == 0) {
+            return;
+        }
+        try {
+            long startTime = System.currentTimeMillis();
+            IndexSnapshot.save(getIndexSnapshotFile(), index, contentRevision, questionCount);
+            Log.d(TAG, "写入索引快照完成，耗时 " + (System.currentTimeMillis() - startTime) + "ms");
+        } catch (IOException e) {
+            Log.w(TAG, "写入索引快照失败: " + e.getMessage());
+        }
+    }
+
+    private void discardIndexSnapshot() {
+        File file = getIndexSnapshotFile();
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "删除索引快照文件失败");
+        }
+    }
+
+    private File getIndexSnapshotFile() {
+        return new File(context.getFilesDir(), INDEX_SNAPSHOT_FILE_NAME);
+    }
+
+    /**
+     * 按ID读取题目，二进制题库可用时直接从映射的文件读取
+     * @return 题目列表，顺序与传入的ID顺序一致，不存在的ID会被忽略
+     */
+    private List<Question> loadQuestionsByIds(List<Integer> ids) {
+        BinaryQuestionBank bank = binaryBank;
+        if (bank != null) {
+            try {
+                return bank.getByIds(ids);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "读取二进制题库失败，改为查询数据库: " + e.getMessage());
+                discardBinaryBank();
+            }
+        }
+        return dbHelper.getQuestionsByIds(ids);
+    }
+
+    private Question loadQuestionById(int id) {
+        BinaryQuestionBank bank = binaryBank;
+        if (bank != null) {
+            try {
+                return bank.findById(id);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "读取二进制题库失败，改为查询数据库: " + e.getMessage());
+                discardBinaryBank();
             }
-            
-            // 批量插入到数据库
-            int insertedCount = dbHelper.batchInsertQuestions(tempQuestions);
-            Log.d(TAG, "成功从JSON导入 " + insertedCount + " 道题目到数据库");
-            
-        } catch (IOException | JSONException e) {
-            Log.e(TAG, "加载题库失败: " + e.getMessage());
-            e.printStackTrace();
         }
+        return dbHelper.getQuestionById(id);
     }
 
     /**
      * 查询问题的答案
      * @param questionText OCR识别到的问题文本
-     * @return 格式化的答案
+     * @return 格式化的答案，截图包含多道题目时按题目顺序逐行排列
      */
     public String queryAnswer(String questionText) {
+        return TextUtils.join("\n", queryAnswer(questionText, MatchDeadline.none()).answers);
+    }
+    
+    /**
+     * 在截止时间内查询问题的答案
+     * 超时后检索和打分提前结束，返回已找到的最佳结果并标记为不完整，调用方可以先显示再重新完整查询
+     * @param questionText OCR识别到的问题文本
+     * @param deadline 截止时间
+     * @return 每道题目的格式化答案（按题目顺序）及是否完整
+     */
+    public AnswerResult queryAnswer(String questionText, final MatchDeadline deadline) {
         if (questionText == null || questionText.isEmpty()) {
-            return "识别到的问题为空";
+            return new AnswerResult("识别到的问题为空", false, -1);
+        }
+        
+        // 索引尚未构建完成时在截止时间内等待，超时后由调用方不限时重新查询
+        if (!awaitQuestionIndex(deadline)) {
+            Log.d(TAG, "截止时间内检索索引未就绪");
+            return new AnswerResult("正在加载题库，请稍候…", true, -1);
         }
         
         // 打印原始OCR识别的字符
         Log.d(TAG, "原始OCR识别字符: " + questionText);
         
-        // 清理OCR识别的文本（包含选项，后续根据题型决定是否使用）
-        String cleanedQuestion = cleanOCRText(questionText);
-        Log.d(TAG, "清理后的完整OCR文本: " + cleanedQuestion);
-        
-        // 提取关键词
-        List<String> keywords = extractKeywords(cleanedQuestion);
+        // 截图包含多道题目时拆分后并行匹配，答案按题目顺序依次显示
+        List<QuestionSegmenter.Segment> segments = QuestionSegmenter.split(questionText);
+        if (segments.size() <= 1) {
+            AnswerResult result = segments.isEmpty() ? answerSingleQuestion(questionText, null, deadline)
+                    : answerSingleQuestion(segments.get(0).text, segments.get(0).typeHeader, deadline);
+            // 不完整的结果可能不是最终答案，不推进会话窗口
+            if (!result.partial && result.lastQuestionId >= 0) {
+                onQuestionMatched(result.lastQuestionId);
+            }
+            return result;
+        }
+        Log.d(TAG, "截图中识别到 " + segments.size() + " 道题目，并行匹配");
         
-        // 查找最匹配的问题
-        Question bestMatch = findBestMatch(cleanedQuestion, keywords);
+        List<Future<AnswerResult>> futures = new ArrayList<>();
+        for (final QuestionSegmenter.Segment segment : segments) {
+            futures.add(matchExecutor.submit(() -> answerSingleQuestion(segment.text, segment.typeHeader, deadline)));
+        }
         
-        if (bestMatch != null) {
-            // 提取OCR输入中的选项内容，用于后续按顺序组织选项
-            List<String> ocrOptions = extractOptionsFromOCRText(cleanedQuestion);
-            return formatAnswer(bestMatch, ocrOptions);
-        } else {
-            return "题库中未找到相关答案";
+        List<String> answers = new ArrayList<>(futures.size());
+        boolean partial = false;
+        // 按题目顺序最后一道匹配到的题目
+        int lastQuestionId = -1;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                AnswerResult result = futures.get(i).get();
+                answers.addAll(result.answers);
+                partial |= result.partial;
+                if (result.lastQuestionId >= 0) {
+                    lastQuestionId = result.lastQuestionId;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                answers.add("题目匹配被中断");
+            } catch (ExecutionException e) {
+                Log.e(TAG, "第 " + (i + 1) + " 道题目匹配失败: " + e.getMessage());
+                answers.add("题库中未找到相关答案");
+            }
         }
+        // 全部题目匹配完成后按题目顺序推进一次会话窗口，下一次截图从最后一道题之后开始
+        if (!partial && lastQuestionId >= 0) {
+            onQuestionMatched(lastQuestionId);
+        }
+        return new AnswerResult(answers, partial, lastQuestionId);
     }
     
     /**
-     * 从完整的OCR识别文本中提取纯问题内容（忽略选项）
+     * 在截止时间内等待检索索引就绪。索引尚未构建时在后台构建，超时后不再等待，构建继续在后台进行
+     * @return 索引是否已就绪（不限时时总是返回true，由查询同步构建）
      */
-    private String extractPureQuestionContent(String fullText) {
-        if (fullText == null || fullText.isEmpty()) return "";
-        
+    private boolean awaitQuestionIndex(MatchDeadline deadline) {
+        long remainingMillis = deadline.remainingMillis();
+        if (questionIndex != null || remainingMillis == Long.MAX_VALUE) {
+            return true;
+        }
+        Future<QuestionIndex> future = prefetchExecutor.submit(this::getQuestionIndex);
         try {
-            // 查找选项标记的位置，支持多种格式：
-            // 1. 字母+中英文句号：A.、A．、a.、a．
-            // 2. 括号+字母+中英文句号：（A）.、(A).、【A】.、[A].
-            // 3. 数字+中英文句号：1.、1．
-            // 4. 字母+括号：A）、A)、a）、a)
-            // 5. 括号+字母：（A）、(A)、【A】、[A]
-            Pattern pattern = Pattern.compile(
-                "(?:[A-Za-z][。．])|" +  // 字母+中英文句号
-                "(?:\\（[A-Za-z]\\）[。．]|\\([A-Za-z]\\)[。．]|\\【[A-Za-z]\\】[。．]|\\[[A-Za-z]\\][。．])|" +  // 括号+字母+中英文句号
-                "(?:[0-9][。．])|" +  // 数字+中英文句号
-                "(?:[A-Za-z]\\）|[A-Za-z]\\))|" +  // 字母+右括号
-                "(?:\\（[A-Za-z]\\）|\\([A-Za-z]\\)|\\【[A-Za-z]\\】|\\[[A-Za-z]\\])",  // 括号+字母
-                Pattern.CASE_INSENSITIVE
-            );
-            
-            Matcher matcher = pattern.matcher(fullText);
-            
-            if (matcher.find()) {
-                // 提取选项前的文本作为纯问题内容
-                return fullText.substring(0, matcher.start()).trim();
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "提取纯问题内容失败: " + e.getMessage());
+            future.get(remainingMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "构建检索索引失败: " + e.getMessage());
+            return false;
         }
+    }
+    
+    /**
+     * 查询单道题目的答案
+     * @param questionText 单道题目的OCR文本
+     * @param typeHeader 分割时题目之前的题型标题，没有时为null
+     * @param deadline 截止时间
+     * @return 格式化的答案、是否完整及匹配到的题目ID（不推进会话窗口，由调用方统一处理）
+     */
+    private AnswerResult answerSingleQuestion(String questionText, String typeHeader, MatchDeadline deadline) {
+        long startTime = System.currentTimeMillis();
+        // 一次性分析OCR文本，检索、打分和格式化共用
+        QueryAnalysis analysis = analyzeQuery(questionText, typeHeader);
         
-        // 如果没有找到选项标记或发生异常，返回完整文本
-        return fullText;
+        // 查找最匹配的问题
+        ScoredMatch match = findBestMatch(analysis, deadline);
+        
+        // 不完整的结果之后会重新完整查询，只记录完整查询
+        if (!match.partial) {
+            captureHistoryWriter.record(match.question != null ? match.question.id : -1, match.score,
+                    System.currentTimeMillis() - startTime);
+        }
+        
+        if (match.question != null) {
+            // 按OCR输入中的选项顺序组织选项
+            return new AnswerResult(formatAnswer(match.question, analysis), match.partial, match.question.id);
+        } else {
+            return new AnswerResult("题库中未找到相关答案", match.partial, -1);
+        }
     }
-
+    
     /**
      * 清理OCR识别的文本，去除噪声
      */
@@ -265,6 +482,15 @@ public class QuestionBankHelper {
             "不得", "允许"
         ));
         
+        // 题库词表分词器，题库为空时退回到原有的整段切分
+        DictionarySegmenter segmenter = getQuestionIndex().getSegmenter();
+        if (segmenter.getWordCount() == 0) {
+            segmenter = null;
+        }
+        int maxKeywordDocFreq = segmenter == null ? 0 :
+                Math.max(MIN_KEYWORD_LENGTH, (int) (segmenter.getDocumentCount() * MAX_KEYWORD_DOC_RATIO));
+        List<String> segmentedKeywords = new ArrayList<>();
+        
         // 中文分词处理（简单的基于标点和空格的分词）
         // 首先将文本分割为句子
         String[] sentences = text.split("[。，；？！、]");
@@ -280,6 +506,23 @@ public class QuestionBankHelper {
                     continue;
                 }
                 
+                // 中文长串按题库词表进行双向最大匹配，只保留词表中区分度足够的短词
+                if (segmenter != null && token.charAt(0) >= '\u4e00' && token.charAt(0) <= '\u9fa5') {
+                    for (String word : segmenter.segment(token)) {
+                        if (word.length() < MIN_KEYWORD_LENGTH || segmentedKeywords.contains(word)) {
+                            continue;
+                        }
+                        if (!semanticWords.contains(word) && stopWords.contains(word)) {
+                            continue;
+                        }
+                        int docFreq = segmenter.documentFrequency(word);
+                        if (docFreq > 0 && docFreq <= maxKeywordDocFreq) {
+                            segmentedKeywords.add(word);
+                        }
+                    }
+                    continue;
+                }
+                
                 // 跳过停用词，但保留语义关键词
                 if (!semanticWords.contains(token) && stopWords.contains(token)) {
                     continue;
@@ -292,6 +535,14 @@ public class QuestionBankHelper {
             }
         }
         
+        // 分词得到的关键词按文档频率升序排在前面，区分度高的词优先用于检索
+        if (!segmentedKeywords.isEmpty()) {
+            final DictionarySegmenter dictionary = segmenter;
+            Collections.sort(segmentedKeywords,
+                    (a, b) -> Integer.compare(dictionary.documentFrequency(a), dictionary.documentFrequency(b)));
+            keywords.addAll(0, segmentedKeywords);
+        }
+        
         // 如果没有提取到足够的关键词，尝试使用原始文本的一部分
         if (keywords.isEmpty() && text.length() > 5) {
             // 提取文本的前几个字符作为关键词
@@ -302,51 +553,116 @@ public class QuestionBankHelper {
     }
 
     /**
-     * 查找最匹配的问题
+     * 分析OCR文本：清理文本，提取纯问题内容、选项和关键词，并预先计算检索用的特征
+     * @param questionText OCR识别到的原始文本
+     * @param typeHeader 分割时题目之前的题型标题，没有时为null
+     * @return 不可变的查询分析结果
      */
-    private Question findBestMatch(String cleanedOCRText, List<String> keywords) {
-        Question bestMatch = null;
-        double highestScore = 0.0;
+    private QueryAnalysis analyzeQuery(String questionText, String typeHeader) {
+        // 清理OCR识别的文本（包含选项，后续根据题型决定是否使用）
+        String cleanedText = cleanOCRText(questionText);
+        Log.d(TAG, "清理后的完整OCR文本: " + cleanedText);
         
-        // 先从OCR文本中提取纯问题内容
-        String pureQuestion = extractPureQuestionContent(cleanedOCRText);
+        // 单次扫描选项标记，同时得到纯问题内容和选项列表
+        OptionLexer.Result lexed = OptionLexer.scan(cleanedText);
+        String pureQuestion = lexed.stem;
         Log.d(TAG, "提取的纯问题内容: " + pureQuestion);
+        List<String> options = lexed.options;
+        Log.d(TAG, "提取的选项列表: " + options);
+        List<String> cleanedOptions = new ArrayList<>();
+        for (String option : options) {
+            cleanedOptions.add(cleanOCRText(option));
+        }
         
-        // 提取选项并打印日志
-        List<String> extractedOptions = extractOptionsFromOCRText(cleanedOCRText);
-        Log.d(TAG, "提取的选项列表: " + extractedOptions);
-        
-        // 优化关键词提取
+        // 提取关键词；纯问题内容是完整文本的前缀，其关键词已包含在内
+        List<String> keywords = extractKeywords(cleanedText);
         List<String> coreKeywords = new ArrayList<>();
-        if (keywords.size() > 0) {
-            // 过滤出长度超过3个字符的关键词
-            for (String keyword : keywords) {
-                if (keyword.length() > 3) {
-                    coreKeywords.add(keyword);
-                }
-            }
-            
-            // 如果核心关键词不足3个，从纯问题中提取更多
-            if (coreKeywords.size() < 3) {
-                List<String> additionalKeywords = extractKeywords(pureQuestion);
-                for (String keyword : additionalKeywords) {
-                    if (keyword.length() > 3 && !coreKeywords.contains(keyword)) {
-                        coreKeywords.add(keyword);
-                        if (coreKeywords.size() >= 10) {
-                            break;
-                        }
-                    }
-                }
+        for (String keyword : keywords) {
+            // 过滤出长度足够的关键词
+            if (keyword.length() >= MIN_KEYWORD_LENGTH && !coreKeywords.contains(keyword)) {
+                coreKeywords.add(keyword);
             }
-            
-            Log.d(TAG, "核心关键词列表: " + coreKeywords);
         }
+        Log.d(TAG, "核心关键词列表: " + coreKeywords);
         
-        // 使用数据库模糊搜索缩小范围，提高效率
-        List<Question> candidateQuestions = new ArrayList<>();
+        return new QueryAnalysis(cleanedText, pureQuestion, preprocessForSimilarity(pureQuestion),
+                options, cleanedOptions, keywords, coreKeywords, TextNormalizer.normalize(pureQuestion), typeHeader);
+    }
+
+    /**
+     * 查找最匹配的问题
+     * @param deadline 截止时间，超时后返回已找到的最佳结果并标记为不完整
+     * @return 最匹配的题目（得分未达到阈值时题目为null）
+     */
+    private ScoredMatch findBestMatch(QueryAnalysis analysis, MatchDeadline deadline) {
+        // 优先匹配会话窗口中的后续题目
+        ScoredMatch windowMatch = matchSessionWindow(analysis);
+        if (windowMatch != null) {
+            return windowMatch;
+        }
         
-        // 步骤1: 使用多关键词进行数据库粗筛
-        if (pureQuestion.length() > 5 && !coreKeywords.isEmpty()) {
+        // 只在当前启用的类别中匹配
+        String activeCategory = getActiveCategory();
+        
+        // 题干与常用题目完全相同时直接在预加载的题目中匹配
+        ScoredMatch hotMatch = matchHotQuestions(analysis, activeCategory);
+        if (hotMatch != null) {
+            return hotMatch;
+        }
+        
+        // 题干包含某道题目独有的多个指纹、且该题目得分足够高时直接确定题目，跳过检索
+        SharedPreferences sharedPreferences = context.getSharedPreferences("app_settings", Context.MODE_PRIVATE);
+        float acceptScore = sharedPreferences.getFloat(PREF_PROGRESSIVE_ACCEPT_SCORE, DEFAULT_PROGRESSIVE_ACCEPT_SCORE);
+        ScoredMatch fingerprintMatch = matchByFingerprint(analysis, activeCategory, acceptScore);
+        if (fingerprintMatch != null) {
+            return fingerprintMatch;
+        }
+        
+        // 先只在推断出的题型分区中匹配，得分不够高时再匹配全部题型，避免题型推断错误导致漏匹配
+        ScoredMatch match = matchCandidates(analysis, activeCategory, analysis.likelyTypes, sharedPreferences, deadline);
+        int scoredCount = match.scoredCount;
+        if (!analysis.likelyTypes.isEmpty() && match.score < acceptScore) {
+            if (deadline.isExpired()) {
+                // 没有时间在全部题型中重新匹配，当前结果不完整
+                match = new ScoredMatch(match.question, match.score, match.scoredCount, true);
+            } else {
+                Log.d(TAG, "推断题型 " + analysis.likelyTypes + " 中最佳得分 " + match.score + "，在全部题型中重新匹配");
+                ScoredMatch unrestricted = matchCandidates(analysis, activeCategory, null, sharedPreferences, deadline);
+                scoredCount += unrestricted.scoredCount;
+                ScoredMatch better = unrestricted.score > match.score ? unrestricted : match;
+                match = new ScoredMatch(better.question, better.score, scoredCount, match.partial || unrestricted.partial);
+            }
+        }
+        if (match.score > MATCH_THRESHOLD) {
+            return match;
+        }
+        
+        return new ScoredMatch(null, match.score, match.scoredCount, match.partial);
+    }
+    
+    /**
+     * 在类别和题型分区内检索候选题目并渐进打分
+     * @param category 限定的类别，为空时匹配全部类别
+     * @param types 限定的题型，为null或空时匹配全部题型
+     * @param deadline 截止时间，超时后跳过剩余的检索阶段和候选
+     * @return 最佳候选及其得分（没有候选时题目为null、得分为0）
+     */
+    private ScoredMatch matchCandidates(QueryAnalysis analysis, String category, Set<QuestionType> types,
+                                        SharedPreferences sharedPreferences, MatchDeadline deadline) {
+        Question bestMatch = null;
+        double highestScore = 0.0;
+        boolean partial = false;
+        String pureQuestion = analysis.pureQuestion;
+        List<String> coreKeywords = analysis.coreKeywords;
+        
+        // 步骤0: BM25倒排检索，只对排名靠前的候选进行完整相似度重排
+        List<Question> candidateQuestions = retrieveByBm25(analysis, category, types);
+        
+        // 步骤1: BM25无命中时，使用多关键词进行数据库粗筛
+        if (candidateQuestions.isEmpty() && deadline.isExpired()) {
+            Log.d(TAG, "BM25无命中且已超过截止时间，跳过数据库检索");
+            partial = true;
+        } else if (candidateQuestions.isEmpty() && pureQuestion.length() > 5 && !coreKeywords.isEmpty()) {
             // 随机选择3-5个关键词（最多使用前10个中的关键词）
             List<String> selectedKeywords = new ArrayList<>();
             int maxKeywordsToUse = Math.min(10, coreKeywords.size());
@@ -360,7 +676,7 @@ public class QuestionBankHelper {
             }
             
             // 随机打乱候选池
-            java.util.Collections.shuffle(keywordPool);
+            Collections.shuffle(keywordPool);
             
             // 选择前numKeywords个关键词
             for (int i = 0; i < Math.min(numKeywords, keywordPool.size()); i++) {
@@ -369,181 +685,546 @@ public class QuestionBankHelper {
             
             Log.d(TAG, "选择的搜索关键词: " + selectedKeywords);
             
-            // 使用多关键词进行数据库搜索
+            // 每个关键词只查询命中的题目ID，在ID集合上按命中关键词数筛选
+            List<IdBitmap> keywordHits = new ArrayList<>();
             for (String keyword : selectedKeywords) {
-                List<Question> temp = dbHelper.searchQuestions(keyword);
-                // 合并结果，去重
-                for (Question q : temp) {
-                    if (!candidateQuestions.contains(q)) {
-                        candidateQuestions.add(q);
-                    }
+                keywordHits.add(dbHelper.searchQuestionIds(keyword, category));
+            }
+            IdBitmap typeIds = getQuestionIndex().idsOfTypes(types);
+            
+            // 从要求命中全部关键词开始逐步放宽，取候选数量不超过上限的最宽松结果
+            IdBitmap candidateIds = new IdBitmap();
+            for (int minHits = keywordHits.size(); minHits >= 1; minHits--) {
+                IdBitmap hits = IdBitmap.atLeast(keywordHits, minHits);
+                if (typeIds != null) {
+                    hits = hits.and(typeIds);
                 }
-                
-                // 如果已经找到足够多的候选题目，可以提前停止
-                if (candidateQuestions.size() > 100) {
+                if (!candidateIds.isEmpty() && hits.cardinality() > MAX_KEYWORD_CANDIDATES) {
                     break;
                 }
+                candidateIds = hits;
             }
+            candidateQuestions = materializeCandidates(candidateIds);
             
             Log.d(TAG, "多关键词搜索到 " + candidateQuestions.size() + " 道候选题目");
             
             // 步骤2: 如果多关键词搜索结果为空，尝试单关键词搜索
             if (candidateQuestions.isEmpty() && !coreKeywords.isEmpty()) {
                 Log.d(TAG, "多关键词搜索结果为空，尝试使用第一个关键词搜索");
-                candidateQuestions = dbHelper.searchQuestions(coreKeywords.get(0));
+                candidateIds = dbHelper.searchQuestionIds(coreKeywords.get(0), category);
+                candidateQuestions = materializeCandidates(typeIds == null ? candidateIds : candidateIds.and(typeIds));
                 Log.d(TAG, "单关键词搜索到 " + candidateQuestions.size() + " 道候选题目");
             }
         }
         
-        // 步骤3: 兜底，如果搜索结果为空，获取所有题目
-        if (candidateQuestions.isEmpty()) {
-            Log.d(TAG, "搜索结果为空，获取所有题目进行匹配");
-            candidateQuestions = dbHelper.getAllQuestions();
-            Log.d(TAG, "获取所有 " + candidateQuestions.size() + " 道题目进行匹配");
+        // 数字特征：只有数值不同的近似题目按查询中的数值区分
+        Map<Integer, Integer> numericMatches = analysis.numericTokens.isEmpty()
+                ? new HashMap<>() : getQuestionIndex().numericMatches(analysis.numericTokens);
+        boolean numericHardFilter = NUMERIC_FILTER_HARD.equals(
+                sharedPreferences.getString(PREF_NUMERIC_FILTER_MODE, NUMERIC_FILTER_WEIGHTED));
+        
+        // 步骤3: 兜底，如果搜索结果为空，流式扫描全部题目，边读取边打分
+        if (candidateQuestions.isEmpty() && deadline.isExpired()) {
+            partial = true;
+        } else if (candidateQuestions.isEmpty()) {
+            Log.d(TAG, "搜索结果为空，流式扫描全部题目进行匹配");
+            FullScanScorer scorer = new FullScanScorer(analysis, types, numericMatches, numericHardFilter, deadline);
+            int visitedCount = dbHelper.scanQuestions(category, scorer);
+            Log.d(TAG, "流式扫描 " + visitedCount + " 道题目，完整打分 " + scorer.scoredCount + " 道");
+            return new ScoredMatch(scorer.bestMatch, scorer.highestScore, scorer.scoredCount, scorer.partial);
+        }
+        
+        if (numericHardFilter) {
+            candidateQuestions = filterByNumericMatches(candidateQuestions, numericMatches);
+            numericMatches = new HashMap<>();
         }
         
+        // 渐进匹配：按检索排名依次打分，remainingUpperBounds[i]为第i个及之后候选的得分上界最大值
+        int candidateCount = candidateQuestions.size();
+        List<CandidateFeatures> candidates = new ArrayList<>(candidateCount);
+        double[] upperBounds = new double[candidateCount];
+        double[] remainingUpperBounds = new double[candidateCount + 1];
         for (Question question : candidateQuestions) {
-            String ocrTextForMatch;
-            String bankTextForMatch;
-            double optionMatchBonus = 0.0; // 初始化选项匹配奖励
+            candidates.add(new CandidateFeatures(question));
+        }
+        double[] numericBonuses = new double[candidateCount];
+        for (int i = candidateCount - 1; i >= 0; i--) {
+            numericBonuses[i] = numericBonus(candidates.get(i).question, analysis, numericMatches);
+            upperBounds[i] = upperBoundScore(candidates.get(i), analysis) + numericBonuses[i];
+            remainingUpperBounds[i] = Math.max(remainingUpperBounds[i + 1], upperBounds[i]);
+        }
+        
+        float acceptScore = sharedPreferences.getFloat(PREF_PROGRESSIVE_ACCEPT_SCORE, DEFAULT_PROGRESSIVE_ACCEPT_SCORE);
+        float margin = sharedPreferences.getFloat(PREF_PROGRESSIVE_MARGIN, DEFAULT_PROGRESSIVE_MARGIN);
+        
+        int scoredCount = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            // 得分上界不超过当前最佳得分的候选不可能胜出，跳过
+            if (upperBounds[i] <= highestScore) {
+                continue;
+            }
+            // 超过截止时间后停止打分，返回当前最佳结果
+            if (deadline.isExpired()) {
+                Log.d(TAG, "超过截止时间，已完整打分 " + scoredCount + " 道候选题目，返回当前最佳结果");
+                partial = true;
+                break;
+            }
             
+            CandidateFeatures candidate = candidates.get(i);
             try {
-                // 根据题型决定匹配内容
-                if (question.type == QuestionType.SINGLE || question.type == QuestionType.MULTIPLE) {
-                    // 选择题：包含题干和选项
-                    ocrTextForMatch = pureQuestion;
-                    
-                    // 构建题库题目的题干部分
-                    bankTextForMatch = cleanOCRText(question.question);
-                    
-                    // 提取OCR输入中的选项内容
-                    List<String> ocrOptions = extractOptionsFromOCRText(cleanedOCRText);
-                    
-                    // 计算选项匹配度（不考虑顺序）
-                    if (!ocrOptions.isEmpty() && question.options != null && !question.options.isEmpty()) {
-                        optionMatchBonus = calculateOptionMatching(ocrOptions, question.options);
-                        Log.d(TAG, "Question ID " + question.id + " option match bonus: " + optionMatchBonus);
-                    }
-                } else {
-                    // 判断题、简答题：只包含题干
-                    ocrTextForMatch = pureQuestion;
-                    bankTextForMatch = cleanOCRText(question.question);
-                }
-                
-                // 跳过空字符串的匹配
-                if (ocrTextForMatch.isEmpty() || bankTextForMatch.isEmpty()) {
-                    continue;
-                }
-                
-                // 计算相似度分数，选择题增加选项匹配奖励
-                double baseScore = calculateSimilarity(ocrTextForMatch, bankTextForMatch, keywords);
-                double totalScore = baseScore + optionMatchBonus;
-                Log.d(TAG, "Question ID " + question.id + " base score: " + baseScore + ", total score: " + totalScore);
-                
+                double totalScore = scoreCandidate(candidate, analysis) + numericBonuses[i];
+                scoredCount++;
                 if (totalScore > highestScore) {
                     highestScore = totalScore;
-                    bestMatch = question;
+                    bestMatch = candidate.question;
                 }
             } catch (Exception e) {
                 Log.e(TAG, "查找最佳匹配失败: " + e.getMessage());
             }
+            
+            if (highestScore >= acceptScore && highestScore - remainingUpperBounds[i + 1] >= margin) {
+                Log.d(TAG, "最佳得分 " + highestScore + " 领先剩余候选得分上界 " + remainingUpperBounds[i + 1] + "，提前结束匹配");
+                break;
+            }
+        }
+        Log.d(TAG, "渐进匹配共完整打分 " + scoredCount + " / " + candidateCount + " 道候选题目");
+        
+        return new ScoredMatch(bestMatch, highestScore, scoredCount, partial);
+    }
+    
+    /**
+     * 计算候选题目的总得分（按题型选择打分核计算题干相似度 + 选择题选项匹配奖励）
+     * @param candidate 候选题目及其预处理特征
+     * @param analysis 查询分析结果
+     * @return 总得分，题干为空无法匹配时返回0
+     */
+    private double scoreCandidate(CandidateFeatures candidate, QueryAnalysis analysis) {
+        Question question = candidate.question;
+        List<String> ocrOptions = analysis.cleanedOptions;
+        double optionMatchBonus = 0.0; // 初始化选项匹配奖励
+        
+        // 选择题：计算选项匹配度（不考虑顺序）；判断题、简答题只匹配题干
+        if (question.type == QuestionType.SINGLE || question.type == QuestionType.MULTIPLE) {
+            if (!ocrOptions.isEmpty() && !candidate.cleanedOptions.isEmpty()) {
+                optionMatchBonus = calculateOptionMatching(ocrOptions, candidate.cleanedOptions);
+                Log.d(TAG, "Question ID " + question.id + " option match bonus: " + optionMatchBonus);
+            }
         }
         
-        // 设置匹配阈值（降低阈值以提高匹配率）
-        if (highestScore > 0.15) {
-            return bestMatch;
+        // 跳过空字符串的匹配
+        if (analysis.pureQuestion.isEmpty() || candidate.cleanedStem.isEmpty()) {
+            return 0.0;
         }
         
-        return null;
+        // 计算相似度分数，选择题增加选项匹配奖励
+        double baseScore = calculateSimilarity(analysis.pureQuestion, analysis.processedStem,
+                candidate.cleanedStem, candidate.processedStem, analysis.keywords, ScoringKernel.forType(question.type));
+        double totalScore = baseScore + optionMatchBonus;
+        Log.d(TAG, "Question ID " + question.id + " base score: " + baseScore + ", total score: " + totalScore);
+        return totalScore;
     }
     
     /**
-     * 从OCR识别的文本中提取选项内容
+     * 计算候选题目总得分的廉价上界，与scoreCandidate的计算方式一一对应：
+     * Jaccard不超过题干1的词数占两者词数之和的比例，关键词得分直接计算，
+     * 最长公共子串和编辑相似度都不超过较短长度/较长长度，重叠度不超过1，选项奖励不超过0.3
      */
-    private List<String> extractOptionsFromOCRText(String cleanedOCRText) {
-        List<String> options = new ArrayList<>();
+    private double upperBoundScore(CandidateFeatures candidate, QueryAnalysis analysis) {
+        String pureQuestion = analysis.pureQuestion;
+        if (pureQuestion.isEmpty() || candidate.cleanedStem.isEmpty()) {
+            return 0.0;
+        }
         
-        // 1. 支持多种选项格式：字母+中英文句号（A.、A．、a.、a．）
-        Pattern pattern1 = Pattern.compile("[a-gA-G][。．]\\s*(.+?)(?=[a-gA-G][。．]|$)", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-        Matcher matcher1 = pattern1.matcher(cleanedOCRText);
-        while (matcher1.find()) {
-            options.add(matcher1.group(1).trim());
+        double optionBound = 0.0;
+        QuestionType type = candidate.question.type;
+        if ((type == QuestionType.SINGLE || type == QuestionType.MULTIPLE)
+                && !analysis.cleanedOptions.isEmpty() && !candidate.cleanedOptions.isEmpty()) {
+            optionBound = MAX_OPTION_MATCH_BONUS;
         }
         
-        // 如果找到选项，返回结果
-        if (!options.isEmpty()) {
-            return options;
+        String processedText1 = analysis.processedStem;
+        String processedText2 = candidate.processedStem;
+        if (pureQuestion.equals(candidate.cleanedStem) || processedText1.equals(processedText2)
+                || (processedText1.length() <= SHORT_TEXT_LENGTH && processedText2.length() <= SHORT_TEXT_LENGTH)) {
+            return 1.0 + optionBound;
         }
+        if (processedText1.isEmpty() || processedText2.isEmpty()) {
+            return optionBound;
+        }
+        
+        ScoringKernel kernel = ScoringKernel.forType(type);
+        int words1 = processedText1.split(" ").length;
+        int words2 = processedText2.split(" ").length;
+        double jaccardBound = (double) words1 / (words1 + words2);
+        double keywordScore = calculateKeywordScore(processedText1, processedText2, analysis.keywords);
+        double lengthRatio = (double) Math.min(processedText1.length(), processedText2.length())
+                / Math.max(processedText1.length(), processedText2.length());
         
-        // 2. 支持括号+字母格式：（A）、(A)、【A】、[A]、（a）等
-        Pattern pattern2 = Pattern.compile(
-            "(?:\\（[a-gA-G]\\）|\\([a-gA-G]\\)|\\【[a-gA-G]\\】|\\[[a-gA-G]\\])\\s*(.+?)(?=(?:\\（[a-gA-G]\\）|\\([a-gA-G]\\)|\\【[a-gA-G]\\】|\\[[a-gA-G]\\])|$)", 
-            Pattern.DOTALL | Pattern.CASE_INSENSITIVE
-        );
-        Matcher matcher2 = pattern2.matcher(cleanedOCRText);
-        while (matcher2.find()) {
-            options.add(matcher2.group(1).trim());
+        return jaccardBound * kernel.jaccardWeight + keywordScore * kernel.keywordWeight
+                + lengthRatio * (kernel.lcsWeight + kernel.editWeight) + kernel.overlapWeight + optionBound;
+    }
+    
+    /**
+     * 数字特征加分：按查询中数字特征的命中比例计算
+     */
+    private double numericBonus(Question question, QueryAnalysis analysis, Map<Integer, Integer> numericMatches) {
+        Integer matched = numericMatches.get(question.id);
+        if (matched == null || analysis.numericTokens.isEmpty()) {
+            return 0.0;
+        }
+        return NUMERIC_MATCH_WEIGHT * matched / analysis.numericTokens.size();
+    }
+    
+    /**
+     * 数字特征硬过滤：只保留命中数字特征最多的候选，没有候选命中时保持不变
+     */
+    private List<Question> filterByNumericMatches(List<Question> candidates, Map<Integer, Integer> numericMatches) {
+        int maxMatched = 0;
+        for (Question question : candidates) {
+            Integer matched = numericMatches.get(question.id);
+            if (matched != null && matched > maxMatched) {
+                maxMatched = matched;
+            }
+        }
+        if (maxMatched == 0) {
+            return candidates;
         }
         
-        // 如果找到选项，返回结果
-        if (!options.isEmpty()) {
-            return options;
+        List<Question> filtered = new ArrayList<>();
+        for (Question question : candidates) {
+            Integer matched = numericMatches.get(question.id);
+            if (matched != null && matched == maxMatched) {
+                filtered.add(question);
+            }
+        }
+        Log.d(TAG, "数字特征过滤后剩余 " + filtered.size() + " / " + candidates.size() + " 道候选题目");
+        return filtered;
+    }
+    
+    /**
+     * 优先在会话窗口（上一次匹配题目的后续题目）中查找匹配
+     * 用户通常按题库顺序答题，窗口内得分达到提前接受阈值时直接返回，跳过检索。
+     * 相邻题目常常只有数值不同，查询包含数字时，只接受题库中数字特征命中最多的题目
+     * @return 窗口内的匹配题目及其得分，未达到阈值时返回null
+     */
+    private ScoredMatch matchSessionWindow(QueryAnalysis analysis) {
+        List<CandidateFeatures> window = sessionWindow;
+        if (window.isEmpty() || analysis.pureQuestion.isEmpty()) {
+            return null;
         }
         
-        // 3. 支持数字序号格式：1.、2.、3.、1．等
-        Pattern pattern3 = Pattern.compile("[1-7][。．]\\s*(.+?)(?=[1-9][。．]|$)", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-        Matcher matcher3 = pattern3.matcher(cleanedOCRText);
-        while (matcher3.find()) {
-            options.add(matcher3.group(1).trim());
+        Map<Integer, Integer> numericMatches = analysis.numericTokens.isEmpty()
+                ? new HashMap<>() : getQuestionIndex().numericMatches(analysis.numericTokens);
+        int maxNumericMatched = 0;
+        for (int matched : numericMatches.values()) {
+            maxNumericMatched = Math.max(maxNumericMatched, matched);
         }
         
-        // 如果找到选项，返回结果
-        if (!options.isEmpty()) {
-            return options;
+        String activeCategory = getActiveCategory();
+        for (CandidateFeatures candidate : window) {
+            if (!isInCategory(candidate.question, activeCategory)) {
+                continue;
+            }
+            Integer matched = numericMatches.get(candidate.question.id);
+            if ((matched == null ? 0 : matched) < maxNumericMatched) {
+                // 题库中有其他题目与查询中的数值更吻合，交给完整检索区分
+                continue;
+            }
+            double totalScore = scoreCandidate(candidate, analysis)
+                    + numericBonus(candidate.question, analysis, numericMatches);
+            if (totalScore >= SESSION_EARLY_ACCEPT_SCORE) {
+                Log.d(TAG, "会话窗口命中题目 ID " + candidate.question.id + "，得分: " + totalScore);
+                return new ScoredMatch(candidate.question, totalScore, 1, false);
+            }
         }
         
-        // 4. 支持字母+右括号格式：A）、A)、a）、a)
-        Pattern pattern4 = Pattern.compile("[a-gA-G][）)]\\s*(.+?)(?=[a-gA-G][）)]|$)", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-        Matcher matcher4 = pattern4.matcher(cleanedOCRText);
-        while (matcher4.find()) {
-            options.add(matcher4.group(1).trim());
+        Log.d(TAG, "会话窗口未命中，继续检索");
+        return null;
+    }
+    
+    /**
+     * 记录匹配到的题目，并在后台预取其后续题目的特征，供下一次截图优先匹配
+     */
+    private void onQuestionMatched(final int questionId) {
+        if (questionId == lastMatchedId) {
+            return;
         }
+        lastMatchedId = questionId;
         
-        // 如果找到选项，返回结果
-        if (!options.isEmpty()) {
-            return options;
+        prefetchExecutor.execute(() -> {
+            // 按可能性排列：下一题优先，最后是当前题（重复截图）
+            List<Integer> windowIds = new ArrayList<>();
+            for (int offset = 1; offset <= SESSION_WINDOW_SIZE; offset++) {
+                windowIds.add(questionId + offset);
+            }
+            windowIds.add(questionId);
+            
+            List<CandidateFeatures> window = new ArrayList<>();
+            for (Question question : loadQuestionsByIds(windowIds)) {
+                window.add(new CandidateFeatures(question));
+            }
+            
+            // 预取期间已经匹配到了其他题目时丢弃过期的窗口
+            if (lastMatchedId == questionId) {
+                sessionWindow = window;
+                Log.d(TAG, "会话窗口已预取 " + window.size() + " 道题目");
+            }
+        });
+    }
+    
+    /**
+     * 在预加载的常用题目中按归一化题干精确匹配，题干相同的多道题目（如选项不同）一起打分
+     * @return 得分达到提前接受阈值的题目，否则返回null
+     */
+    private ScoredMatch matchHotQuestions(QueryAnalysis analysis, String category) {
+        List<CandidateFeatures> candidates = hotQuestions.get(analysis.normalizedStem);
+        if (candidates == null || analysis.pureQuestion.isEmpty()) {
+            return null;
         }
         
-        // 5. 支持括号+字母+句号格式：（A）.、(A).、【A】.、[A].等
-        Pattern pattern5 = Pattern.compile(
-            "(?:\\（[a-gA-G]\\）[。．]|\\([a-gA-G]\\)[。．]|\\【[a-gA-G]\\】[。．]|\\[[a-gA-G]\\][。．])\\s*(.+?)(?=(?:\\（[a-gA-G]\\）[。．]|\\([a-gA-G]\\)[。．]|\\【[a-gA-G]\\】[。．]|\\[[a-gA-G]\\][。．])|$)", 
-            Pattern.DOTALL | Pattern.CASE_INSENSITIVE
-        );
-        Matcher matcher5 = pattern5.matcher(cleanedOCRText);
-        while (matcher5.find()) {
-            options.add(matcher5.group(1).trim());
+        Question bestMatch = null;
+        double highestScore = 0.0;
+        for (CandidateFeatures candidate : candidates) {
+            if (!isInCategory(candidate.question, category)) {
+                continue;
+            }
+            double totalScore = scoreCandidate(candidate, analysis);
+            if (totalScore > highestScore) {
+                highestScore = totalScore;
+                bestMatch = candidate.question;
+            }
+        }
+        if (bestMatch == null || highestScore < SESSION_EARLY_ACCEPT_SCORE) {
+            return null;
+        }
+        Log.d(TAG, "常用题目精确匹配命中题目 ID " + bestMatch.id + "，得分: " + highestScore);
+        return new ScoredMatch(bestMatch, highestScore, candidates.size(), false);
+    }
+    
+    /**
+     * 构建检索索引，并按查询记录预加载命中次数最多的题目到精确匹配表（在后台线程执行）
+     */
+    private void warmCaches() {
+        long startTime = System.currentTimeMillis();
+        getQuestionIndex();
+        
+        List<Integer> hotIds = dbHelper.getMostHitQuestionIds(HOT_QUESTION_COUNT);
+        Map<String, List<CandidateFeatures>> hot = new HashMap<>();
+        for (Question question : loadQuestionsByIds(hotIds)) {
+            String stem = TextNormalizer.normalize(question.question);
+            if (stem.isEmpty() || hot.containsKey(stem)) {
+                continue;
+            }
+            // 题干相同的题目全部加入，避免只凭题干命中选项不同的常用题目
+            List<CandidateFeatures> sameStem = new ArrayList<>();
+            for (Question sibling : dbHelper.searchQuestions(question.question)) {
+                if (stem.equals(TextNormalizer.normalize(sibling.question))) {
+                    sameStem.add(new CandidateFeatures(sibling));
+                }
+            }
+            if (!sameStem.isEmpty()) {
+                hot.put(stem, sameStem);
+            }
+        }
+        hotQuestions = hot;
+        Log.d(TAG, "预加载 " + hot.size() + " 道常用题目，耗时 " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+    
+    /**
+     * 使用题目指纹直接确定题目。指纹只说明题干与该题目共享独有的子串，
+     * 题库外的题目也可能命中，因此仍对该题目完整打分，得分足够高才接受
+     * @param acceptScore 直接接受所需的得分（同时必须超过MATCH_THRESHOLD）
+     * @return 指纹唯一确定、属于当前类别且得分达到接受阈值的题目，否则返回null（继续正常检索）
+     */
+    private ScoredMatch matchByFingerprint(QueryAnalysis analysis, String category, double acceptScore) {
+        QuestionIndex index = getQuestionIndex();
+        int questionId = index.getFingerprintMatcher().identify(analysis.normalizedStem);
+        if (questionId < 0) {
+            return null;
         }
         
-        return options;
+        Question question = loadQuestionById(questionId);
+        if (question == null || !isInCategory(question, category)) {
+            return null;
+        }
+        Map<Integer, Integer> numericMatches = analysis.numericTokens.isEmpty()
+                ? new HashMap<>() : index.numericMatches(analysis.numericTokens);
+        double score = scoreCandidate(new CandidateFeatures(question), analysis)
+                + numericBonus(question, analysis, numericMatches);
+        if (score <= MATCH_THRESHOLD || score < acceptScore) {
+            Log.d(TAG, "指纹命中题目 ID " + questionId + "，但得分 " + score + " 不足，继续检索");
+            return null;
+        }
+        Log.d(TAG, "指纹命中题目 ID " + questionId + "，得分: " + score + "，跳过检索");
+        return new ScoredMatch(question, score, 1, false);
     }
     
     /**
-     * 计算选项匹配度
+     * 使用BM25索引检索候选题目
+     * @param analysis 查询分析结果（使用题干二元组）
+     * @param category 限定的类别，为空时检索全部题目
+     * @param types 限定的题型，为null或空时检索全部题型
+     * @return 按BM25得分降序排列、覆盖足够查询二元组的候选题目，无有效命中时返回空列表
      */
-    private double calculateOptionMatching(List<String> ocrOptions, List<String> bankOptions) {
-        int matchedCount = 0;
-        List<String> cleanedBankOptions = new ArrayList<>();
+    private List<Question> retrieveByBm25(QueryAnalysis analysis, String category, Set<QuestionType> types) {
+        QuestionIndex index = getQuestionIndex();
+        if (index == null || index.size() == 0) {
+            return new ArrayList<>();
+        }
+        
+        List<QuestionIndex.Hit> hits = index.search(analysis.stemBigrams, BM25_RERANK_SIZE, category, types);
+        List<Integer> ids = new ArrayList<>();
+        for (QuestionIndex.Hit hit : hits) {
+            if (hit.coverage >= MIN_BM25_COVERAGE) {
+                ids.add(hit.questionId);
+            }
+        }
+        Log.d(TAG, "BM25检索到 " + hits.size() + " 道题目，其中 " + ids.size() + " 道覆盖率达标");
         
-        // 预处理题库选项
-        for (String option : bankOptions) {
-            cleanedBankOptions.add(cleanOCRText(option));
+        return loadQuestionsByIds(ids);
+    }
+    
+    /**
+     * 按ID读取候选题目，超过上限时只读取ID最小的部分
+     */
+    private List<Question> materializeCandidates(IdBitmap candidateIds) {
+        List<Integer> ids = candidateIds.toList();
+        if (ids.size() > MAX_KEYWORD_CANDIDATES) {
+            ids = ids.subList(0, MAX_KEYWORD_CANDIDATES);
+        }
+        return loadQuestionsByIds(ids);
+    }
+    
+    /**
+     * 获取内存检索索引，不存在时优先加载索引快照；
+     * 没有可用快照时从二进制题库或数据库构建（没有二进制题库时同时写入），并保存快照
+     */
+    private QuestionIndex getQuestionIndex() {
+        QuestionIndex index = questionIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = questionIndex;
+                if (index == null) {
+                    long startTime = System.currentTimeMillis();
+                    int contentRevision = dbHelper.getContentRevision();
+                    int questionCount = dbHelper.getQuestionCount();
+                    index = loadIndexSnapshot(contentRevision, questionCount);
+                    if (index != null) {
+                        questionIndex = index;
+                        categories = Collections.unmodifiableList(index.getCategories());
+                        Log.d(TAG, "加载索引快照完成，共 " + index.size() + " 道题目，耗时 "
+                                + (System.currentTimeMillis() - startTime) + "ms");
+                        return index;
+                    }
+                    BinaryQuestionBank bank = binaryBank;
+                    if (bank != null) {
+                        try {
+                            index = QuestionIndex.build(bank);
+                        } catch (RuntimeException e) {
+                            Log.e(TAG, "从二进制题库构建索引失败，改为读取数据库: " + e.getMessage());
+                            discardBinaryBank();
+                        }
+                    }
+                    if (index == null) {
+                        List<Question> questions = dbHelper.getAllQuestions();
+                        index = QuestionIndex.build(questions);
+                        writeBinaryBank(questions, contentRevision);
+                    }
+                    questionIndex = index;
+                    categories = Collections.unmodifiableList(index.getCategories());
+                    saveIndexSnapshot(index, contentRevision, questionCount);
+                    Log.d(TAG, "构建检索索引完成，共 " + index.size() + " 道题目，" + index.getFingerprintMatcher().getFingerprintCount()
+                            + " 个指纹，耗时 " + (System.currentTimeMillis() - startTime) + "ms");
+                }
+            }
         }
+        return index;
+    }
+    
+    /**
+     * 根据题干引导语推断题目类别，如"依据《变电安规》，..."推断为"变电安规"
+     * @param stem 题干
+     * @return 类别，无法推断时返回空字符串
+     */
+    public static String inferCategory(String stem) {
+        if (stem == null) {
+            return "";
+        }
+        Matcher matcher = CATEGORY_PATTERN.matcher(stem);
+        return matcher.find() ? matcher.group(1) : "";
+    }
+    
+    /**
+     * 获取当前启用的类别
+     * @return 类别，空字符串表示全部题库
+     */
+    public String getActiveCategory() {
+        SharedPreferences sharedPreferences = context.getSharedPreferences("app_settings", Context.MODE_PRIVATE);
+        return sharedPreferences.getString(PREF_ACTIVE_CATEGORY, "");
+    }
+    
+    /**
+     * 设置当前启用的类别，之后的查询只在该类别中匹配
+     * @param category 类别，为null或空字符串时匹配全部题库
+     */
+    public void setActiveCategory(String category) {
+        SharedPreferences sharedPreferences = context.getSharedPreferences("app_settings", Context.MODE_PRIVATE);
+        sharedPreferences.edit().putString(PREF_ACTIVE_CATEGORY, category == null ? "" : category).apply();
+        Log.d(TAG, "当前类别切换为: " + (category == null || category.isEmpty() ? "全部" : category));
+    }
+    
+    /**
+     * 获取题库中的全部类别
+     * 优先返回构建索引时缓存的类别列表，避免在界面线程上查询数据库；索引尚未就绪时才读取数据库
+     */
+    public List<String> getCategories() {
+        List<String> cached = categories;
+        if (cached != null) {
+            return cached;
+        }
+        return dbHelper.getCategories();
+    }
+    
+    /**
+     * 判断题目是否属于指定类别（类别为空时总是属于）
+     */
+    private static boolean isInCategory(Question question, String category) {
+        return category == null || category.isEmpty() || category.equals(question.category);
+    }
+    
+    /**
+     * 导入后在后台构建索引并写入二进制题库，避免导入后的第一次查询等待
+     */
+    private void rebuildIndexInBackground() {
+        prefetchExecutor.execute(this::warmCaches);
+    }
+    
+    /**
+     * 题库内容变更后使索引、索引快照、二进制题库和会话窗口失效，下次查询时重新构建
+     */
+    private void invalidateQuestionIndex() {
+        questionIndex = null;
+        categories = null;
+        discardBinaryBank();
+        discardIndexSnapshot();
+        // 题目ID可能已经变化，清空会话窗口和常用题目
+        lastMatchedId = -1;
+        sessionWindow = new ArrayList<>();
+        hotQuestions = new HashMap<>();
+    }
+    
+    /**
+     * 计算选项匹配度
+     * @param cleanedOcrOptions 已清理的OCR选项
+     * @param cleanedBankOptions 已清理的题库选项
+     */
+    private double calculateOptionMatching(List<String> cleanedOcrOptions, List<String> cleanedBankOptions) {
+        int matchedCount = 0;
         
-        for (String ocrOption : ocrOptions) {
-            String cleanedOcrOption = cleanOCRText(ocrOption);
+        for (String cleanedOcrOption : cleanedOcrOptions) {
             for (String bankOption : cleanedBankOptions) {
-                // 使用相似度匹配，提高容错率
-                if (calculateSimilarity(cleanedOcrOption, bankOption, new ArrayList<>()) > 0.9) {
+                // 使用带OCR混淆代价的有界编辑距离匹配，提高容错率
+                if (OcrEditDistance.isSameOption(cleanedOcrOption, bankOption)) {
                     matchedCount++;
                     break;
                 }
@@ -551,27 +1232,31 @@ public class QuestionBankHelper {
         }
         
         // 计算匹配度（最多贡献0.3的分数）
-        int totalOptions = Math.max(ocrOptions.size(), bankOptions.size());
+        int totalOptions = Math.max(cleanedOcrOptions.size(), cleanedBankOptions.size());
         if (totalOptions == 0) {
             return 0.0;
         }
         
-        return (double) matchedCount / totalOptions * 0.3; // 选项匹配度最高贡献0.3分
+        return (double) matchedCount / totalOptions * MAX_OPTION_MATCH_BONUS; // 选项匹配度最高贡献0.3分
     }
 
     /**
      * 计算问题相似度
+     * @param text1 查询题干
+     * @param processedText1 预处理后的查询题干
+     * @param text2 题库题干
+     * @param processedText2 预处理后的题库题干
+     * @param keywords 关键词列表
+     * @param kernel 题型对应的打分核
      */
-    private double calculateSimilarity(String text1, String text2, List<String> keywords) {
+    private double calculateSimilarity(String text1, String processedText1,
+                                       String text2, String processedText2, List<String> keywords,
+                                       ScoringKernel kernel) {
         // 如果两个文本完全相同，直接返回1.0
         if (text1.equals(text2)) {
             return 1.0;
         }
         
-        // 文本预处理
-        String processedText1 = preprocessForSimilarity(text1);
-        String processedText2 = preprocessForSimilarity(text2);
-        
         // 如果预处理后文本完全相同，返回1.0
         if (processedText1.equals(processedText2)) {
             return 1.0;
@@ -581,6 +1266,11 @@ public class QuestionBankHelper {
             return 0;
         }
         
+        // 短文本的多指标得分不稳定，直接使用带OCR混淆代价的编辑距离
+        if (processedText1.length() <= SHORT_TEXT_LENGTH && processedText2.length() <= SHORT_TEXT_LENGTH) {
+            return OcrEditDistance.similarity(processedText1, processedText2, 0.0);
+        }
+        
         // Jaccard相似度
         double jaccardScore = calculateJaccardSimilarity(processedText1, processedText2);
         
@@ -591,17 +1281,16 @@ public class QuestionBankHelper {
         double lcsScore = calculateLCSScore(processedText1, processedText2);
         
         // 增加内容重叠度检查（对于相似的长文本给予更高权重）
-        double overlapScore = calculateOverlapScore(processedText1, processedText2);
+        double overlapScore = kernel.overlapWeight > 0
+                ? calculateOverlapScore(processedText1, processedText2) : 0.0;
         
-        // 综合相似度得分（调整加权平均，增加最长公共子串的权重）
-        double totalScore = jaccardScore * 0.3 + keywordScore * 0.2 + lcsScore * 0.3 + overlapScore * 0.2;
+        // 整体编辑相似度（判断题题干短，逐字比较更可靠）
+        double editScore = kernel.editWeight > 0
+                ? OcrEditDistance.similarity(processedText1, processedText2, 0.0) : 0.0;
         
-        // 对于短文本（少于5个字符），增加相似度分数的权重
-        if (text1.length() < 5 && text2.length() < 5) {
-            totalScore = Math.min(1.0, totalScore + 0.2);
-        }
-        
-        return totalScore;
+        // 按题型的打分核加权
+        return jaccardScore * kernel.jaccardWeight + keywordScore * kernel.keywordWeight
+                + lcsScore * kernel.lcsWeight + overlapScore * kernel.overlapWeight + editScore * kernel.editWeight;
     }
     
     /**
@@ -713,58 +1402,102 @@ public class QuestionBankHelper {
     /**
      * 从JSON字符串导入题库
      * @param jsonContent JSON格式的题库内容
-     * @return 导入成功的题目数量
+     * @return 新增、更新、跳过和失败的题目数量，读取或解析失败时返回null
+     */
+    public QuestionBankImporter.Result importQuestionBank(String jsonContent) {
+        return importQuestionBank(new StringReader(jsonContent));
+    }
+    
+    /**
+     * 从输入流流式导入题库，内存占用与文件大小无关
+     * 按内容哈希去重：已有的相同题目跳过，答案有变化的题目原地更新，重复导入不会增加题目
+     * @param inputStream UTF-8编码的JSON题库，调用方负责关闭
+     * @return 新增、更新、跳过和失败的题目数量，读取或解析失败时返回null
      */
-    public int importQuestionBank(String jsonContent) {
+    public QuestionBankImporter.Result importQuestionBank(InputStream inputStream) {
         try {
-            JSONObject jsonObject = new JSONObject(jsonContent);
-            JSONArray questionsArray = jsonObject.getJSONArray("questions");
-            
-            List<Question> tempQuestions = new ArrayList<>();
-            for (int i = 0; i < questionsArray.length(); i++) {
-                JSONObject questionObj = questionsArray.getJSONObject(i);
-                Question question = new Question();
-                
-                question.id = questionObj.getInt("id");
-                question.type = QuestionType.valueOf(questionObj.getString("type"));
-                question.question = questionObj.getString("question");
-                
-                // 解析选项
-                if (questionObj.has("options")) {
-                    JSONArray optionsArray = questionObj.getJSONArray("options");
-                    List<String> options = new ArrayList<>();
-                    for (int j = 0; j < optionsArray.length(); j++) {
-                        options.add(optionsArray.getString(j));
-                    }
-                    question.options = options;
-                }
-                
-                question.answer = questionObj.getString("answer");
-                tempQuestions.add(question);
+            return importQuestionBank(new BufferedReader(new InputStreamReader(inputStream, "UTF-8")));
+        } catch (IOException e) {
+            Log.e(TAG, "读取题库失败: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private QuestionBankImporter.Result importQuestionBank(Reader reader) {
+        try {
+            QuestionBankImporter.Result result = new QuestionBankImporter(dbHelper, false).importFrom(reader);
+            // 没有新增或更新的题目时索引和二进制题库仍然有效
+            if (result.changedCount() > 0) {
+                invalidateQuestionIndex();
+                rebuildIndexInBackground();
             }
-            
-            // 批量插入到数据库
-            int insertedCount = dbHelper.batchInsertQuestions(tempQuestions);
-            Log.d(TAG, "成功从JSON导入 " + insertedCount + " 道题目到数据库");
-            return insertedCount;
-            
-        } catch (JSONException e) {
+            Log.d(TAG, "从JSON导入题库完成，" + result);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            // 数值字段格式错误时JsonReader抛出NumberFormatException，此前的分块已经提交
             Log.e(TAG, "解析JSON失败: " + e.getMessage());
             e.printStackTrace();
-            return 0;
+            // 已经写入的部分题目同样需要重建索引
+            invalidateQuestionIndex();
+            return null;
         }
     }
     
+    /**
+     * 应用题库增量更新文件，只写入变化的题目，整个增量在一个事务中生效。
+     * 成功后索引、二进制题库和索引快照失效并在后台重建
+     * @param inputStream UTF-8编码的JSON增量文件，调用方负责关闭
+     * @return 新增、更新和删除的题目数量；文件无效、题库版本不匹配或写入失败时返回null
+     */
+    public QuestionBankImporter.Result applyBankDelta(InputStream inputStream) {
+        try {
+            Reader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+            QuestionBankImporter.Result result = new QuestionBankImporter(dbHelper, false).applyDelta(reader);
+            if (result != null && result.changedCount() > 0) {
+                invalidateQuestionIndex();
+                rebuildIndexInBackground();
+            }
+            return result;
+        } catch (IOException | RuntimeException e) {
+            // 增量文件先完整解析再在一个事务中写入，解析失败（包括数值格式错误）时数据库没有变化
+            Log.e(TAG, "解析增量文件失败: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 获取当前题库版本
+     * @return 题库版本，导入的题库没有版本号时返回0
+     */
+    public int getBankVersion() {
+        return dbHelper.getBankVersion();
+    }
+    
     /**
      * 删除所有题库
      * @return 是否删除成功
      */
     public boolean deleteAllQuestions() {
         int rowsDeleted = dbHelper.deleteAllQuestions();
+        invalidateQuestionIndex();
         Log.d(TAG, "成功删除 " + rowsDeleted + " 道题目");
         return rowsDeleted > 0;
     }
     
+    /**
+     * 立即写入缓冲中的截图查询记录，在内存紧张时调用
+     */
+    public void flushCaptureHistory() {
+        captureHistoryWriter.flush();
+    }
+    
+    /**
+     * 写入缓冲中的截图查询记录并释放写入线程，在截图服务停止时调用
+     */
+    public void closeCaptureHistory() {
+        captureHistoryWriter.close();
+    }
+    
     /**
      * 获取数据库中题目数量
      * @return 题目数量
@@ -775,8 +1508,9 @@ public class QuestionBankHelper {
 
     /**
      * 格式化答案，支持按OCR选项顺序重新组织选项
+     * 正确选项和判断题的真假倾向直接读取导入时预先解析的位掩码
      */
-    private String formatAnswer(Question question, List<String> ocrOptions) {
+    private String formatAnswer(Question question, QueryAnalysis analysis) {
         StringBuilder sb = new StringBuilder();
         
         // 添加题目类型
@@ -799,20 +1533,17 @@ public class QuestionBankHelper {
         String compressedQuestion = compressLongText(question.question, 20, 10);
         sb.append("问题: " + compressedQuestion + "\n");
         
+        // 按OCR选项顺序排列的题库选项索引
+        List<Integer> reorderedIndices = getReorderedOptionIndices(question.options, analysis.cleanedOptions);
+        
         // 添加选项（如果有）
-        if (question.options != null && !question.options.isEmpty() && 
-            question.type != QuestionType.SHORT) { // 简答题不显示选项
+        if (!reorderedIndices.isEmpty() && question.type != QuestionType.SHORT) { // 简答题不显示选项
             sb.append("选项:\n");
             
-            // 获取按OCR选项顺序匹配后的题库选项顺序
-            List<String> reorderedOptions = getReorderedOptions(question.options, ocrOptions);
-            
             char optionLabel = 'A';
-            for (String option : reorderedOptions) {
-                // 检查当前选项是否为正确答案
-                boolean isCorrect = isOptionCorrect(option, question.options, question.answer);
-                
-                if (isCorrect) {
+            for (int index : reorderedIndices) {
+                String option = question.options.get(index);
+                if (AnswerResolver.isSet(question.correctMask, index)) {
                     // 简化标记，只在选项标签前添加[CORRECT]，不再包裹整个选项
                     sb.append(optionLabel + ". [CORRECT]" + option + "\n");
                 } else {
@@ -826,99 +1557,22 @@ public class QuestionBankHelper {
         sb.append("答案: ");
         
         if (question.type == QuestionType.TRUE_FALSE) {
-            // 判断题：根据重新排序后的选项生成正确答案
-            List<String> reorderedOptions = getReorderedOptions(question.options, ocrOptions);
+            // 判断题：按重新排序后的顺序找到第一个正确选项，根据其真假倾向显示图标
             boolean foundCorrectOption = false;
-            
-            for (String option : reorderedOptions) {
-                boolean isCorrect = isOptionCorrect(option, question.options, question.answer);
-                if (isCorrect) {
-                    // 检查正确选项的内容，确定显示的图标
-                    String cleanedOption = cleanOCRText(option);
-                    boolean shouldBeTrue = cleanedOption.contains("正确") || 
-                                          cleanedOption.equalsIgnoreCase("正确") || 
-                                          cleanedOption.contains("对") ||
-                                          cleanedOption.equalsIgnoreCase("对") ||
-                                          cleanedOption.contains("真") ||
-                                          cleanedOption.equalsIgnoreCase("真") ||
-                                          cleanedOption.contains("是") ||
-                                          cleanedOption.equalsIgnoreCase("是") ||
-                                          cleanedOption.contains("√") ||
-                                          cleanedOption.contains("✓") ||
-                                          cleanedOption.contains("✔") ||
-                                          cleanedOption.contains("✅") ||
-                                          cleanedOption.contains("🌕") ||
-                                          cleanedOption.contains("✓") ||
-                                          cleanedOption.contains("T") ||
-                                          cleanedOption.equalsIgnoreCase("T") ||
-                                          cleanedOption.contains("Yes") ||
-                                          cleanedOption.equalsIgnoreCase("Yes") ||
-                                          cleanedOption.contains("Y") ||
-                                          cleanedOption.equalsIgnoreCase("Y");
-                    
-                    if (shouldBeTrue) {
-                        sb.append("✅");
-                    } else {
-                        sb.append("❌");
-                    }
+            for (int index : reorderedIndices) {
+                if (AnswerResolver.isSet(question.correctMask, index)) {
+                    sb.append(AnswerResolver.isSet(question.truePolarityMask, index) ? "✅" : "❌");
                     foundCorrectOption = true;
                     break;
                 }
             }
             
             if (!foundCorrectOption) {
-                // 如果没有找到正确选项，检查答案是否为选项字母（如"A"）
-                boolean isAnswerOptionLetter = false;
-                for (char c = 'A'; c <= 'Z'; c++) {
-                    if (question.answer.equals(String.valueOf(c))) {
-                        isAnswerOptionLetter = true;
-                        break;
-                    }
-                }
-                
+                // 答案为选项字母（如"A"）但没有对应的选项时，显示原始答案
+                boolean isAnswerOptionLetter = question.answer.length() == 1 &&
+                        question.answer.charAt(0) >= 'A' && question.answer.charAt(0) <= 'Z';
                 if (isAnswerOptionLetter) {
-                    // 答案为选项字母，查找对应的选项内容
-                    List<String> originalOptions = question.options;
-                    if (originalOptions != null && !originalOptions.isEmpty()) {
-                        // 将选项字母转换为索引
-                        int answerIndex = question.answer.charAt(0) - 'A';
-                        if (answerIndex >= 0 && answerIndex < originalOptions.size()) {
-                            String answerOption = originalOptions.get(answerIndex);
-                            String cleanedOption = cleanOCRText(answerOption);
-                            boolean shouldBeTrue = cleanedOption.contains("正确") || 
-                                                  cleanedOption.equalsIgnoreCase("正确") || 
-                                                  cleanedOption.contains("对") ||
-                                                  cleanedOption.equalsIgnoreCase("对") ||
-                                                  cleanedOption.contains("真") ||
-                                                  cleanedOption.equalsIgnoreCase("真") ||
-                                                  cleanedOption.contains("是") ||
-                                                  cleanedOption.equalsIgnoreCase("是") ||
-                                                  cleanedOption.contains("√") ||
-                                                  cleanedOption.contains("✓") ||
-                                                  cleanedOption.contains("✔") ||
-                                                  cleanedOption.contains("✅") ||
-                                                  cleanedOption.contains("🌕") ||
-                                                  cleanedOption.contains("✓") ||
-                                                  cleanedOption.contains("T") ||
-                                                  cleanedOption.equalsIgnoreCase("T") ||
-                                                  cleanedOption.contains("Yes") ||
-                                                  cleanedOption.equalsIgnoreCase("Yes") ||
-                                                  cleanedOption.contains("Y") ||
-                                                  cleanedOption.equalsIgnoreCase("Y");
-                            
-                            if (shouldBeTrue) {
-                                sb.append("✅");
-                            } else {
-                                sb.append("❌");
-                            }
-                        } else {
-                            // 索引无效，显示原始答案
-                            sb.append(question.answer);
-                        }
-                    } else {
-                        // 没有选项，显示原始答案
-                        sb.append(question.answer);
-                    }
+                    sb.append(question.answer);
                 } else {
                     // 回退到原始逻辑，使用忽略大小写比较
                     sb.append(question.answer.equalsIgnoreCase("TRUE") ? "✅" : "❌");
@@ -930,19 +1584,12 @@ public class QuestionBankHelper {
         } else {
             // 选择题：根据重新排序后的选项生成正确答案
             StringBuilder answerBuilder = new StringBuilder();
-            
-            // 获取按OCR选项顺序重新组织的题库选项
-            List<String> reorderedOptions = getReorderedOptions(question.options, ocrOptions);
-            
             char optionLabel = 'A';
             boolean hasCorrectAnswer = false;
             
             // 遍历重新排序后的选项，找出所有正确答案
-            for (int i = 0; i < reorderedOptions.size(); i++) {
-                String option = reorderedOptions.get(i);
-                boolean isCorrect = isOptionCorrect(option, question.options, question.answer);
-                
-                if (isCorrect) {
+            for (int index : reorderedIndices) {
+                if (AnswerResolver.isSet(question.correctMask, index)) {
                     if (hasCorrectAnswer) {
                         answerBuilder.append("、"); // 添加选项分隔符
                     }
@@ -1055,28 +1702,34 @@ public class QuestionBankHelper {
     }
     
     /**
-     * 获取按OCR选项顺序重新组织的题库选项
+     * 获取按OCR选项顺序重新组织的题库选项索引
+     * @return 题库选项的原始索引列表，题库没有选项时返回空列表
      */
-    private List<String> getReorderedOptions(List<String> bankOptions, List<String> ocrOptions) {
+    private List<Integer> getReorderedOptionIndices(List<String> bankOptions, List<String> cleanedOcrOptions) {
+        List<Integer> originalOrder = new ArrayList<>();
+        if (bankOptions != null) {
+            for (int i = 0; i < bankOptions.size(); i++) {
+                originalOrder.add(i);
+            }
+        }
+        
         // 如果没有OCR选项或题库选项，直接返回原始顺序
-        if (ocrOptions == null || ocrOptions.isEmpty() || bankOptions == null || bankOptions.isEmpty()) {
+        if (cleanedOcrOptions == null || cleanedOcrOptions.isEmpty() || originalOrder.isEmpty()) {
             Log.d(TAG, "没有OCR选项或题库选项，直接返回原始顺序");
-            return new ArrayList<>(bankOptions);
+            return originalOrder;
         }
         
         Log.d(TAG, "原始题库选项: " + bankOptions);
-        Log.d(TAG, "OCR提取的选项: " + ocrOptions);
+        Log.d(TAG, "OCR提取的选项: " + cleanedOcrOptions);
         
         // 创建已匹配选项的集合，避免重复添加
         Set<Integer> matchedBankIndices = new HashSet<>();
-        // 创建结果列表，用于存储重新排序后的选项
-        List<String> reorderedOptions = new ArrayList<>();
+        // 创建结果列表，用于存储重新排序后的选项索引
+        List<Integer> reorderedIndices = new ArrayList<>();
         
         // 遍历OCR识别的选项，按照OCR顺序处理
-        for (int ocrIndex = 0; ocrIndex < ocrOptions.size(); ocrIndex++) {
-            String ocrOption = ocrOptions.get(ocrIndex);
-            // 清理OCR选项文本
-            String cleanedOcrOption = cleanOCRText(ocrOption);
+        for (int ocrIndex = 0; ocrIndex < cleanedOcrOptions.size(); ocrIndex++) {
+            String cleanedOcrOption = cleanedOcrOptions.get(ocrIndex);
             
             // 如果OCR选项文本为空，跳过
             if (cleanedOcrOption.isEmpty()) {
@@ -1098,8 +1751,8 @@ public class QuestionBankHelper {
                 // 清理题库选项文本
                 String cleanedBankOption = cleanOCRText(bankOptions.get(i));
                 
-                // 计算相似度
-                double similarity = calculateSimilarity(cleanedOcrOption, cleanedBankOption, new ArrayList<>());
+                // 计算编辑距离相似度，低于当前最佳时提前结束
+                double similarity = OcrEditDistance.similarity(cleanedOcrOption, cleanedBankOption, highestSimilarity);
                 
                 Log.d(TAG, "OCR选项" + ocrIndex + "(" + cleanedOcrOption + ") 与题库选项" + i + "(" + cleanedBankOption + ") 的相似度: " + similarity);
                 
@@ -1113,7 +1766,7 @@ public class QuestionBankHelper {
             // 如果找到最佳匹配，添加到结果列表
             if (bestMatchIndex != -1) {
                 Log.d(TAG, "OCR选项" + ocrIndex + "最佳匹配为题库选项" + bestMatchIndex + "，相似度: " + highestSimilarity);
-                reorderedOptions.add(bankOptions.get(bestMatchIndex));
+                reorderedIndices.add(bestMatchIndex);
                 matchedBankIndices.add(bestMatchIndex);
             }
         }
@@ -1123,97 +1776,14 @@ public class QuestionBankHelper {
         for (int i = 0; i < bankOptions.size(); i++) {
             if (!matchedBankIndices.contains(i)) {
                 Log.d(TAG, "添加未匹配的题库选项" + i + "到结果列表");
-                reorderedOptions.add(bankOptions.get(i));
+                reorderedIndices.add(i);
             }
         }
         
-        // 确保结果列表与原始题库选项数量相同
-        if (reorderedOptions.size() != bankOptions.size()) {
-            Log.d(TAG, "结果列表与原始题库选项数量不同，返回原始顺序");
-            return new ArrayList<>(bankOptions);
-        }
-        
-        Log.d(TAG, "重新排序后的选项: " + reorderedOptions);
-        return reorderedOptions;
+        Log.d(TAG, "重新排序后的选项索引: " + reorderedIndices);
+        return reorderedIndices;
     }
     
-    /**
-     * 检查指定选项是否为正确答案
-     */
-    private boolean isOptionCorrect(String option, List<String> bankOptions, String answer) {
-        // 遍历原始题库选项，找到匹配的选项
-        for (int i = 0; i < bankOptions.size(); i++) {
-            String bankOption = bankOptions.get(i);
-            // 使用相似度匹配，提高对OCR误差的容忍度
-            if (calculateSimilarity(cleanOCRText(option), cleanOCRText(bankOption), new ArrayList<>()) > 0.9) {
-                // 对于判断题，特殊处理：直接比较选项内容与答案的对应关系
-                if (answer.equalsIgnoreCase("TRUE") || answer.equalsIgnoreCase("FALSE")) {
-                    // 判断题答案格式为TRUE/FALSE，检查选项内容
-                    String cleanedOption = cleanOCRText(option);
-                    
-                    // 判断选项内容对应的正确答案
-                    boolean shouldBeTrue = cleanedOption.contains("正确") || 
-                                          cleanedOption.equalsIgnoreCase("正确") || 
-                                          cleanedOption.contains("对") ||
-                                          cleanedOption.equalsIgnoreCase("对") ||
-                                          cleanedOption.contains("真") ||
-                                          cleanedOption.equalsIgnoreCase("真") ||
-                                          cleanedOption.contains("是") ||
-                                          cleanedOption.equalsIgnoreCase("是") ||
-                                          cleanedOption.contains("√") ||
-                                          cleanedOption.contains("✓") ||
-                                          cleanedOption.contains("✔") ||
-                                          cleanedOption.contains("✅") ||
-                                          cleanedOption.contains("🌕") ||
-                                          cleanedOption.contains("✓") ||
-                                          cleanedOption.contains("T") ||
-                                          cleanedOption.equalsIgnoreCase("T") ||
-                                          cleanedOption.contains("Yes") ||
-                                          cleanedOption.equalsIgnoreCase("Yes") ||
-                                          cleanedOption.contains("Y") ||
-                                          cleanedOption.equalsIgnoreCase("Y");
-                    
-                    boolean shouldBeFalse = cleanedOption.contains("错误") || 
-                                           cleanedOption.equalsIgnoreCase("错误") || 
-                                           cleanedOption.contains("错") ||
-                                           cleanedOption.equalsIgnoreCase("错") ||
-                                           cleanedOption.contains("假") ||
-                                           cleanedOption.equalsIgnoreCase("假") ||
-                                           cleanedOption.contains("否") ||
-                                           cleanedOption.equalsIgnoreCase("否") ||
-                                           cleanedOption.contains("×") ||
-                                           cleanedOption.contains("✗") ||
-                                           cleanedOption.contains("✕") ||
-                                           cleanedOption.contains("✖") ||
-                                           cleanedOption.contains("❌") ||
-                                           cleanedOption.contains("🌑") ||
-                                           cleanedOption.contains("✗") ||
-                                           cleanedOption.contains("F") ||
-                                           cleanedOption.equalsIgnoreCase("F") ||
-                                           cleanedOption.contains("No") ||
-                                           cleanedOption.equalsIgnoreCase("No") ||
-                                           cleanedOption.contains("N") ||
-                                           cleanedOption.equalsIgnoreCase("N");
-                    
-                    // 根据答案内容判断选项是否正确
-                    if (answer.equalsIgnoreCase("TRUE")) {
-                        return shouldBeTrue;
-                    } else if (answer.equalsIgnoreCase("FALSE")) {
-                        return shouldBeFalse;
-                    }
-                    return false;
-                } else {
-                    // 选择题：将原始索引转换为选项标签（A, B, C...）
-                    char optionLabel = (char) ('A' + i);
-                    // 检查该选项标签是否包含在答案中
-                    return answer.indexOf(optionLabel) != -1;
-                }
-            }
-        }
-        
-        return false;
-    }
-
     /**
      * 添加问题到题库
      */
@@ -1248,6 +1818,7 @@ public class QuestionBankHelper {
                 long id = dbHelper.insertQuestion(question);
                 if (id != -1) {
                     question.id = (int) id;
+                    invalidateQuestionIndex();
                     Log.d(TAG, "成功添加新问题: " + question.question);
                 }
             }
@@ -1273,5 +1844,197 @@ public class QuestionBankHelper {
         public String question;
         public List<String> options;
         public String answer;
+        // 正确选项位掩码（第i位对应第i个选项），导入时由AnswerResolver解析
+        public int correctMask;
+        // 内容表示"正确"的选项位掩码，用于判断题显示
+        public int truePolarityMask;
+        // 所属类别（如变电安规），导入时填充，可为空字符串
+        public String category;
+        // 题库文件中的题目ID，增量更新按此定位题目，没有时为null
+        public Integer sourceId;
+    }
+    
+    /**
+     * 题干相似度的打分核：各项相似度指标的权重，权重之和为1
+     */
+    private static final class ScoringKernel {
+        // 选择题：多指标综合，选项另有匹配奖励
+        static final ScoringKernel CHOICE = new ScoringKernel(0.3, 0.2, 0.3, 0.2, 0.0);
+        // 判断题：题干短且往往只差几个字，以整体编辑相似度为主
+        static final ScoringKernel TRUE_FALSE = new ScoringKernel(0.1, 0.1, 0.2, 0.0, 0.6);
+        // 简答题：题干长，以最长公共子串为主
+        static final ScoringKernel SHORT = new ScoringKernel(0.1, 0.2, 0.5, 0.2, 0.0);
+        
+        final double jaccardWeight;
+        final double keywordWeight;
+        final double lcsWeight;
+        final double overlapWeight;
+        final double editWeight;
+        
+        ScoringKernel(double jaccardWeight, double keywordWeight, double lcsWeight,
+                      double overlapWeight, double editWeight) {
+            this.jaccardWeight = jaccardWeight;
+            this.keywordWeight = keywordWeight;
+            this.lcsWeight = lcsWeight;
+            this.overlapWeight = overlapWeight;
+            this.editWeight = editWeight;
+        }
+        
+        static ScoringKernel forType(QuestionType type) {
+            if (type == QuestionType.TRUE_FALSE) {
+                return TRUE_FALSE;
+            }
+            if (type == QuestionType.SHORT) {
+                return SHORT;
+            }
+            return CHOICE;
+        }
+    }
+    
+    /**
+     * 一次匹配的结果：最佳题目、得分、完整打分的候选数量，以及是否因超时而不完整
+     */
+    private static final class ScoredMatch {
+        final Question question;
+        final double score;
+        final int scoredCount;
+        final boolean partial;
+        
+        ScoredMatch(Question question, double score, int scoredCount, boolean partial) {
+            this.question = question;
+            this.score = score;
+            this.scoredCount = scoredCount;
+            this.partial = partial;
+        }
+    }
+    
+    /**
+     * 查询结果：截图中每道题目的格式化答案（按题目顺序，由界面负责排版）、
+     * 是否因超过截止时间而不完整，以及是否找到了题目
+     */
+    public static class AnswerResult {
+        public final List<String> answers;
+        public final boolean partial;
+        public final boolean matched;
+        // 按题目顺序最后一道匹配到的题目ID，未匹配到时为-1
+        final int lastQuestionId;
+        
+        AnswerResult(String answer, boolean partial, int questionId) {
+            this(Collections.singletonList(answer), partial, questionId);
+        }
+        
+        AnswerResult(List<String> answers, boolean partial, int lastQuestionId) {
+            this.answers = Collections.unmodifiableList(answers);
+            this.partial = partial;
+            this.matched = lastQuestionId >= 0;
+            this.lastQuestionId = lastQuestionId;
+        }
+    }
+    
+    /**
+     * 全题库流式扫描的打分器：逐道计算得分上界，只对可能胜出的题目完整打分，
+     * 只保留当前最佳结果，内存占用与题库大小无关。
+     * 数字特征硬过滤在扫描中等价实现：遇到命中数更多的题目时丢弃之前的最佳结果。
+     */
+    private class FullScanScorer implements DBHelper.QuestionVisitor {
+        private final QueryAnalysis analysis;
+        private final Set<QuestionType> types;
+        private final Map<Integer, Integer> numericMatches;
+        private final boolean numericHardFilter;
+        private final MatchDeadline deadline;
+        // 全部题目中数字特征命中数的最大值，硬过滤下达到该值后才能提前结束
+        private final int maxNumericMatched;
+        // 硬过滤下当前保留的数字特征命中数
+        private int numericLevel = 0;
+        
+        Question bestMatch = null;
+        double highestScore = 0.0;
+        int scoredCount = 0;
+        boolean partial = false;
+        
+        FullScanScorer(QueryAnalysis analysis, Set<QuestionType> types, Map<Integer, Integer> numericMatches,
+                       boolean numericHardFilter, MatchDeadline deadline) {
+            this.analysis = analysis;
+            this.types = types;
+            this.numericMatches = numericMatches;
+            this.numericHardFilter = numericHardFilter;
+            this.deadline = deadline;
+            int max = 0;
+            for (int matched : numericMatches.values()) {
+                max = Math.max(max, matched);
+            }
+            this.maxNumericMatched = max;
+        }
+        
+        @Override
+        public boolean visit(Question question) {
+            if (types != null && !types.isEmpty() && !types.contains(question.type)) {
+                return true;
+            }
+            Integer matched = numericMatches.get(question.id);
+            int matchedCount = matched == null ? 0 : matched;
+            if (numericHardFilter) {
+                if (matchedCount < numericLevel) {
+                    return true;
+                }
+                if (matchedCount > numericLevel) {
+                    numericLevel = matchedCount;
+                    bestMatch = null;
+                    highestScore = 0.0;
+                }
+            }
+            // 超过截止时间后停止扫描，返回当前最佳结果
+            if (deadline.isExpired()) {
+                Log.d(TAG, "超过截止时间，停止扫描题库");
+                partial = true;
+                return false;
+            }
+            
+            CandidateFeatures candidate = new CandidateFeatures(question);
+            double bonus = numericHardFilter ? 0.0 : numericBonus(question, analysis, numericMatches);
+            // 得分上界不超过当前最佳得分的题目不可能胜出，跳过
+            if (upperBoundScore(candidate, analysis) + bonus <= highestScore) {
+                return true;
+            }
+            try {
+                double totalScore = scoreCandidate(candidate, analysis) + bonus;
+                scoredCount++;
+                if (totalScore > highestScore) {
+                    highestScore = totalScore;
+                    bestMatch = question;
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "查找最佳匹配失败: " + e.getMessage());
+            }
+            
+            // 已找到足够确定的匹配时提前结束扫描
+            if (highestScore >= FULL_SCAN_CONFIDENT_SCORE && numericLevel >= (numericHardFilter ? maxNumericMatched : 0)) {
+                Log.d(TAG, "扫描中找到得分 " + highestScore + " 的题目，提前结束扫描");
+                return false;
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * 候选题目及其匹配用的预处理特征（清理后的题干和选项）
+     */
+    private class CandidateFeatures {
+        final Question question;
+        final String cleanedStem;
+        final String processedStem;
+        final List<String> cleanedOptions;
+        
+        CandidateFeatures(Question question) {
+            this.question = question;
+            this.cleanedStem = cleanOCRText(question.question);
+            this.processedStem = preprocessForSimilarity(cleanedStem);
+            this.cleanedOptions = new ArrayList<>();
+            if (question.options != null) {
+                for (String option : question.options) {
+                    cleanedOptions.add(cleanOCRText(option));
+                }
+            }
+        }
     }
 }
\ No newline at end of file
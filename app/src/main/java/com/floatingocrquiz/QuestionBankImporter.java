@@ -0,0 +1,337 @@
+package com.floatingocrquiz;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流式题库导入器
+ * 使用JsonReader逐道解析{"questions": [...]}格式的题库，每凑满固定数量的题目就写入数据库，
+ * 不构建完整的JSON树和题目列表，内存占用与题库大小无关。
+ * 写入时按内容哈希去重，重复导入同一题库不会增加题目。
+ *
+ * 题库文件可以带版本号：{"version": 3, "questions": [...]}。
+ * 之后的更新可以使用增量文件，只包含变化的题目（按题库中的题目ID定位）：
+ * {"base_version": 3, "version": 4, "added": [...], "changed": [...], "removed": [12, 15]}
+ */
+public final class QuestionBankImporter {
+    private static final String TAG = "com.floatingocrquiz.QuestionBankImporter";
+
+    // 每次写入数据库的题目数量，每批在一个事务中提交
+    private static final int CHUNK_SIZE = 500;
+    // 导入题目超过该数量时视为大批量导入，先删除索引，导入完成后重建
+    private static final int BULK_LOAD_THRESHOLD = 5000;
+    // 判断文件是完整题库还是增量文件时最多读取的字节数
+    private static final int DETECT_LIMIT = 64 * 1024;
+
+    // 内容长度上限
+    private static final int MAX_QUESTION_LENGTH = 600;
+    private static final int MAX_OPTIONS_LENGTH = 250;
+    private static final int MAX_ANSWER_LENGTH = 1000;
+
+    private final DBHelper dbHelper;
+    // 是否跳过内容过长的题目
+    private final boolean validateLength;
+
+    /**
+     * @param dbHelper 写入的数据库
+     * @param validateLength 是否跳过题干、选项或答案过长的题目
+     */
+    public QuestionBankImporter(DBHelper dbHelper, boolean validateLength) {
+        this.dbHelper = dbHelper;
+        this.validateLength = validateLength;
+    }
+
+    /**
+     * 导入结果统计
+     */
+    public static class Result {
+        // 新插入的题目数量
+        public int inserted;
+        // 内容相同但答案等有变化、已更新的题目数量
+        public int updated;
+        // 与题库中已有题目完全相同、未写入的题目数量
+        public int skipped;
+        // 缺少字段、内容过长或写入失败的题目数量
+        public int failed;
+        // 增量更新删除的题目数量
+        public int removed;
+
+        /**
+         * 新增、更新或删除的题目数量
+         */
+        public int changedCount() {
+            return inserted + updated + removed;
+        }
+
+        @Override
+        public String toString() {
+            return "新增 " + inserted + " 道，更新 " + updated + " 道，删除 " + removed + " 道，跳过 " + skipped
+                    + " 道，失败 " + failed + " 道";
+        }
+    }
+
+    /**
+     * 判断JSON文件是否为增量文件：顶层在"questions"之前出现base_version、added、changed或removed字段。
+     * 只读取文件开头的一部分，读取后把流恢复到开头
+     * @param inputStream 支持mark/reset的输入流
+     * @return 是否为增量文件，开头部分无法判断时按完整题库处理
+     * @throws IOException 读取失败
+     */
+    public static boolean isDelta(InputStream inputStream) throws IOException {
+        inputStream.mark(DETECT_LIMIT);
+        byte[] prefix = new byte[DETECT_LIMIT];
+        int length = 0;
+        int read;
+        while (length < prefix.length && (read = inputStream.read(prefix, length, prefix.length - length)) != -1) {
+            length += read;
+        }
+        inputStream.reset();
+
+        JsonReader jsonReader = new JsonReader(new StringReader(new String(prefix, 0, length, StandardCharsets.UTF_8)));
+        try {
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                switch (jsonReader.nextName()) {
+                    case "questions":
+                        return false;
+                    case "base_version":
+                    case "added":
+                    case "changed":
+                    case "removed":
+                        return true;
+                    default:
+                        jsonReader.skipValue();
+                        break;
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // 开头部分被截断或格式错误，交给完整导入报告错误
+        }
+        return false;
+    }
+
+    /**
+     * 从字符流导入题库
+     * @param reader JSON题库的字符流，调用方负责关闭
+     * @return 新增、更新、跳过和失败的题目数量
+     * @throws IOException 读取失败或JSON格式错误
+     */
+    public Result importFrom(Reader reader) throws IOException {
+        JsonReader jsonReader = new JsonReader(reader);
+        List<QuestionBankHelper.Question> chunk = new ArrayList<>(CHUNK_SIZE);
+        List<String> rowErrors = new ArrayList<>();
+        Result result = new Result();
+        int readCount = 0;
+        Integer bankVersion = null;
+        // 大批量导入时删除的索引，导入结束后重建
+        List<String> droppedIndexes = null;
+
+        try {
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                String name = jsonReader.nextName();
+                if ("version".equals(name)) {
+                    bankVersion = jsonReader.nextInt();
+                    continue;
+                }
+                if (!"questions".equals(name)) {
+                    jsonReader.skipValue();
+                    continue;
+                }
+
+                jsonReader.beginArray();
+                while (jsonReader.hasNext()) {
+                    QuestionBankHelper.Question question = readQuestion(jsonReader);
+                    if (question == null || (validateLength && !isWithinLimits(question))) {
+                        result.failed++;
+                        continue;
+                    }
+                    chunk.add(question);
+                    readCount++;
+                    if (droppedIndexes == null && readCount > BULK_LOAD_THRESHOLD) {
+                        droppedIndexes = dbHelper.dropIndexes();
+                    }
+                    if (chunk.size() >= CHUNK_SIZE) {
+                        dbHelper.upsertQuestions(chunk, result, rowErrors);
+                        chunk.clear();
+                    }
+                }
+                jsonReader.endArray();
+            }
+            jsonReader.endObject();
+
+            if (!chunk.isEmpty()) {
+                dbHelper.upsertQuestions(chunk, result, rowErrors);
+            }
+            if (bankVersion != null) {
+                dbHelper.setBankVersion(bankVersion);
+            }
+        } finally {
+            if (droppedIndexes != null) {
+                dbHelper.restoreIndexes(droppedIndexes);
+            }
+        }
+        Log.d(TAG, "流式导入完成，" + result + "（其中 " + rowErrors.size() + " 道写入数据库失败）");
+        return result;
+    }
+
+    /**
+     * 从字符流读取并应用题库增量更新，整个增量在一个事务中生效
+     * @param reader JSON增量文件的字符流，调用方负责关闭
+     * @return 新增、更新和删除的题目数量；题库版本与增量的基础版本不一致或写入失败时返回null
+     * @throws IOException 读取失败、JSON格式错误或缺少版本号
+     */
+    public Result applyDelta(Reader reader) throws IOException {
+        JsonReader jsonReader = new JsonReader(reader);
+        Result result = new Result();
+        List<QuestionBankHelper.Question> upserts = new ArrayList<>();
+        List<Integer> removedIds = new ArrayList<>();
+        Integer baseVersion = null;
+        Integer version = null;
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            switch (jsonReader.nextName()) {
+                case "base_version":
+                    baseVersion = jsonReader.nextInt();
+                    break;
+                case "version":
+                    version = jsonReader.nextInt();
+                    break;
+                case "added":
+                case "changed":
+                    jsonReader.beginArray();
+                    while (jsonReader.hasNext()) {
+                        QuestionBankHelper.Question question = readQuestion(jsonReader);
+                        if (question == null || question.sourceId == null
+                                || (validateLength && !isWithinLimits(question))) {
+                            Log.w(TAG, "增量中的题目缺少ID或内容无效，已跳过");
+                            result.failed++;
+                            continue;
+                        }
+                        upserts.add(question);
+                    }
+                    jsonReader.endArray();
+                    break;
+                case "removed":
+                    jsonReader.beginArray();
+                    while (jsonReader.hasNext()) {
+                        removedIds.add(jsonReader.nextInt());
+                    }
+                    jsonReader.endArray();
+                    break;
+                default:
+                    jsonReader.skipValue();
+                    break;
+            }
+        }
+        jsonReader.endObject();
+
+        if (baseVersion == null || version == null) {
+            throw new IOException("增量文件缺少base_version或version");
+        }
+        if (!dbHelper.applyDelta(baseVersion, version, upserts, removedIds, result)) {
+            return null;
+        }
+        Log.d(TAG, "增量更新完成，题库版本 " + baseVersion + " -> " + version + "，" + result);
+        return result;
+    }
+
+    /**
+     * 读取一道题目
+     * @return 题目，缺少必要字段或题型无效时返回null
+     */
+    private QuestionBankHelper.Question readQuestion(JsonReader jsonReader) throws IOException {
+        QuestionBankHelper.Question question = new QuestionBankHelper.Question();
+        // 可选的类别字段，未提供时在入库时根据题干推断
+        question.category = "";
+        String type = null;
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if (jsonReader.peek() == JsonToken.NULL) {
+                jsonReader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    question.sourceId = jsonReader.nextInt();
+                    break;
+                case "type":
+                    type = jsonReader.nextString();
+                    break;
+                case "question":
+                    question.question = jsonReader.nextString();
+                    break;
+                case "options":
+                    question.options = readOptions(jsonReader);
+                    break;
+                case "answer":
+                    question.answer = jsonReader.nextString();
+                    break;
+                case "category":
+                    question.category = jsonReader.nextString();
+                    break;
+                default:
+                    jsonReader.skipValue();
+                    break;
+            }
+        }
+        jsonReader.endObject();
+
+        if (type == null || question.question == null || question.answer == null) {
+            Log.w(TAG, "题目缺少必要字段 (ID: " + question.sourceId + ")，已跳过");
+            return null;
+        }
+        try {
+            question.type = QuestionBankHelper.QuestionType.valueOf(type);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "题目类型无效 (ID: " + question.sourceId + ", Type: " + type + ")，已跳过");
+            return null;
+        }
+        return question;
+    }
+
+    private List<String> readOptions(JsonReader jsonReader) throws IOException {
+        List<String> options = new ArrayList<>();
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            options.add(jsonReader.nextString());
+        }
+        jsonReader.endArray();
+        return options;
+    }
+
+    /**
+     * 检查题干、选项和答案长度是否在上限之内
+     */
+    private static boolean isWithinLimits(QuestionBankHelper.Question question) {
+        if (question.question.length() > MAX_QUESTION_LENGTH) {
+            Log.w(TAG, "题目题干过长 (ID: " + question.sourceId + ", Length: " + question.question.length() + ")，已跳过");
+            return false;
+        }
+        // 选项转换为字符串后检查长度
+        if (question.options != null) {
+            String optionsJson = question.options.toString();
+            if (optionsJson.length() > MAX_OPTIONS_LENGTH) {
+                Log.w(TAG, "题目选项过长 (ID: " + question.sourceId + ", Length: " + optionsJson.length() + ")，已跳过");
+                return false;
+            }
+        }
+        if (question.answer.length() > MAX_ANSWER_LENGTH) {
+            Log.w(TAG, "题目答案过长 (ID: " + question.sourceId + ", Length: " + question.answer.length() + ")，已跳过");
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,531 @@
+package com.floatingocrquiz;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * 题库内存检索索引
+ * 以题干的字符二元组为词项建立倒排表，使用BM25对候选题目打分。
+ * 一次遍历查询词项的倒排表即可为所有共享二元组的题目累计得分，
+ * 累加器按题目序号（ordinal）索引，避免逐题计算完整相似度。
+ */
+public final class QuestionIndex {
+
+    // BM25参数
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    // 序号 -> 题目ID（按ID升序）
+    private final int[] questionIds;
+    // 序号 -> 文档长度（二元组个数）
+    private final int[] docLengths;
+    private final float avgDocLength;
+
+    // 词项（二元组编码，升序）及其倒排表
+    private final int[] termKeys;
+    private final int[][] postingDocs;
+    private final int[][] postingFreqs;
+    // 预先计算的IDF
+    private final float[] idf;
+    // 基于题库词表的分词器
+    private final DictionarySegmenter segmenter;
+    // 类别分区：类别 -> 该类别题目序号集合
+    private final Map<String, BitSet> categoryPartitions;
+    // 题型分区：题型 -> 该题型题目序号集合
+    private final Map<QuestionBankHelper.QuestionType, BitSet> typePartitions;
+    // 题目唯一子串指纹
+    private final FingerprintMatcher fingerprintMatcher;
+    // 数字特征倒排表：特征（如"0.7m"） -> 包含该特征的题目序号
+    private final Map<String, int[]> numericPostings;
+
+    private QuestionIndex(int[] questionIds, int[] docLengths, int[] termKeys,
+                          int[][] postingDocs, int[][] postingFreqs, DictionarySegmenter segmenter,
+                          Map<String, BitSet> categoryPartitions, Map<QuestionBankHelper.QuestionType, BitSet> typePartitions,
+                          FingerprintMatcher fingerprintMatcher, Map<String, int[]> numericPostings) {
+        this.questionIds = questionIds;
+        this.segmenter = segmenter;
+        this.categoryPartitions = categoryPartitions;
+        this.typePartitions = typePartitions;
+        this.fingerprintMatcher = fingerprintMatcher;
+        this.numericPostings = numericPostings;
+        this.docLengths = docLengths;
+        this.termKeys = termKeys;
+        this.postingDocs = postingDocs;
+        this.postingFreqs = postingFreqs;
+
+        long totalLength = 0;
+        for (int length : docLengths) {
+            totalLength += length;
+        }
+        this.avgDocLength = docLengths.length == 0 ? 0f : (float) totalLength / docLengths.length;
+
+        int docCount = questionIds.length;
+        this.idf = new float[termKeys.length];
+        for (int t = 0; t < termKeys.length; t++) {
+            int df = postingDocs[t].length;
+            idf[t] = (float) Math.log(1.0 + (docCount - df + 0.5) / (df + 0.5));
+        }
+    }
+
+    /**
+     * 根据题目列表构建索引
+     * @param questions 题库中的全部题目
+     * @return 构建好的索引
+     */
+    public static QuestionIndex build(List<QuestionBankHelper.Question> questions) {
+        List<QuestionBankHelper.Question> sorted = new ArrayList<>(questions);
+        Collections.sort(sorted, (a, b) -> Integer.compare(a.id, b.id));
+        return build(sorted, null);
+    }
+
+    /**
+     * 根据二进制题库构建索引，直接使用写入时预先计算的归一化题干
+     * @param bank 映射的二进制题库
+     * @return 构建好的索引
+     */
+    public static QuestionIndex build(BinaryQuestionBank bank) {
+        return build(bank.questions(), bank.normalizedStems());
+    }
+
+    /**
+     * @param sorted 按ID升序的题目
+     * @param precomputedStems 与题目一一对应的归一化题干，为null时逐题计算
+     */
+    private static QuestionIndex build(List<QuestionBankHelper.Question> sorted, List<String> precomputedStems) {
+        int docCount = sorted.size();
+        int[] questionIds = new int[docCount];
+        int[] docLengths = new int[docCount];
+        List<String> stems = new ArrayList<>(docCount);
+        List<String> normalizedStems = new ArrayList<>(docCount);
+        Map<Integer, IntList[]> postings = new HashMap<>();
+        Map<String, BitSet> categoryPartitions = new HashMap<>();
+        Map<QuestionBankHelper.QuestionType, BitSet> typePartitions = new EnumMap<>(QuestionBankHelper.QuestionType.class);
+        Map<String, IntList> numericLists = new HashMap<>();
+
+        for (int doc = 0; doc < docCount; doc++) {
+            QuestionBankHelper.Question question = sorted.get(doc);
+            questionIds[doc] = question.id;
+            stems.add(question.question);
+
+            String category = question.category == null ? "" : question.category;
+            BitSet partition = categoryPartitions.get(category);
+            if (partition == null) {
+                partition = new BitSet(docCount);
+                categoryPartitions.put(category, partition);
+            }
+            partition.set(doc);
+
+            if (question.type != null) {
+                BitSet typePartition = typePartitions.get(question.type);
+                if (typePartition == null) {
+                    typePartition = new BitSet(docCount);
+                    typePartitions.put(question.type, typePartition);
+                }
+                typePartition.set(doc);
+            }
+
+            for (String numericToken : NumericTokenizer.extract(question.question)) {
+                IntList docs = numericLists.get(numericToken);
+                if (docs == null) {
+                    docs = new IntList();
+                    numericLists.put(numericToken, docs);
+                }
+                docs.add(doc);
+            }
+
+            String normalizedStem = precomputedStems != null
+                    ? precomputedStems.get(doc) : TextNormalizer.normalize(question.question);
+            normalizedStems.add(normalizedStem);
+            int[] terms = TextNormalizer.bigrams(normalizedStem);
+            docLengths[doc] = terms.length;
+
+            // 统计当前题目内的词频
+            Map<Integer, Integer> termFreqs = new HashMap<>();
+            for (int term : terms) {
+                Integer freq = termFreqs.get(term);
+                termFreqs.put(term, freq == null ? 1 : freq + 1);
+            }
+
+            for (Map.Entry<Integer, Integer> entry : termFreqs.entrySet()) {
+                IntList[] posting = postings.get(entry.getKey());
+                if (posting == null) {
+                    posting = new IntList[]{new IntList(), new IntList()};
+                    postings.put(entry.getKey(), posting);
+                }
+                posting[0].add(doc);
+                posting[1].add(entry.getValue());
+            }
+        }
+
+        int[] termKeys = new int[postings.size()];
+        int index = 0;
+        for (Integer term : postings.keySet()) {
+            termKeys[index++] = term;
+        }
+        Arrays.sort(termKeys);
+
+        int[][] postingDocs = new int[termKeys.length][];
+        int[][] postingFreqs = new int[termKeys.length][];
+        for (int t = 0; t < termKeys.length; t++) {
+            IntList[] posting = postings.get(termKeys[t]);
+            postingDocs[t] = posting[0].toArray();
+            postingFreqs[t] = posting[1].toArray();
+        }
+
+        Map<String, int[]> numericPostings = new HashMap<>();
+        for (Map.Entry<String, IntList> entry : numericLists.entrySet()) {
+            numericPostings.put(entry.getKey(), entry.getValue().toArray());
+        }
+
+        return new QuestionIndex(questionIds, docLengths, termKeys, postingDocs, postingFreqs,
+                DictionarySegmenter.build(stems), categoryPartitions, typePartitions,
+                FingerprintMatcher.build(questionIds, normalizedStems), numericPostings);
+    }
+
+    /**
+     * 序列化索引，写入快照文件（IDF和平均文档长度在加载时重新计算）
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        IndexSnapshot.writeInts(out, questionIds);
+        IndexSnapshot.writeInts(out, docLengths);
+        IndexSnapshot.writeInts(out, termKeys);
+        for (int t = 0; t < termKeys.length; t++) {
+            IndexSnapshot.writeInts(out, postingDocs[t]);
+            IndexSnapshot.writeInts(out, postingFreqs[t]);
+        }
+        segmenter.writeTo(out);
+
+        out.writeInt(categoryPartitions.size());
+        for (Map.Entry<String, BitSet> entry : categoryPartitions.entrySet()) {
+            IndexSnapshot.writeString(out, entry.getKey());
+            IndexSnapshot.writeLongs(out, entry.getValue().toLongArray());
+        }
+        out.writeInt(typePartitions.size());
+        for (Map.Entry<QuestionBankHelper.QuestionType, BitSet> entry : typePartitions.entrySet()) {
+            IndexSnapshot.writeString(out, entry.getKey().name());
+            IndexSnapshot.writeLongs(out, entry.getValue().toLongArray());
+        }
+
+        fingerprintMatcher.writeTo(out);
+
+        out.writeInt(numericPostings.size());
+        for (Map.Entry<String, int[]> entry : numericPostings.entrySet()) {
+            IndexSnapshot.writeString(out, entry.getKey());
+            IndexSnapshot.writeInts(out, entry.getValue());
+        }
+    }
+
+    /**
+     * 从快照数据恢复索引
+     * @param in 快照数据，从当前位置开始读取
+     * @throws IllegalArgumentException 题型名称无效
+     */
+    static QuestionIndex readFrom(ByteBuffer in) {
+        int[] questionIds = IndexSnapshot.readInts(in);
+        int[] docLengths = IndexSnapshot.readInts(in);
+        int[] termKeys = IndexSnapshot.readInts(in);
+        int[][] postingDocs = new int[termKeys.length][];
+        int[][] postingFreqs = new int[termKeys.length][];
+        for (int t = 0; t < termKeys.length; t++) {
+            postingDocs[t] = IndexSnapshot.readInts(in);
+            postingFreqs[t] = IndexSnapshot.readInts(in);
+        }
+        DictionarySegmenter segmenter = DictionarySegmenter.readFrom(in);
+
+        Map<String, BitSet> categoryPartitions = new HashMap<>();
+        int categoryCount = in.getInt();
+        for (int i = 0; i < categoryCount; i++) {
+            String category = IndexSnapshot.readString(in);
+            categoryPartitions.put(category, BitSet.valueOf(IndexSnapshot.readLongs(in)));
+        }
+        Map<QuestionBankHelper.QuestionType, BitSet> typePartitions = new EnumMap<>(QuestionBankHelper.QuestionType.class);
+        int typeCount = in.getInt();
+        for (int i = 0; i < typeCount; i++) {
+            QuestionBankHelper.QuestionType type = QuestionBankHelper.QuestionType.valueOf(IndexSnapshot.readString(in));
+            typePartitions.put(type, BitSet.valueOf(IndexSnapshot.readLongs(in)));
+        }
+
+        FingerprintMatcher fingerprintMatcher = FingerprintMatcher.readFrom(in);
+
+        Map<String, int[]> numericPostings = new HashMap<>();
+        int numericCount = in.getInt();
+        for (int i = 0; i < numericCount; i++) {
+            String token = IndexSnapshot.readString(in);
+            numericPostings.put(token, IndexSnapshot.readInts(in));
+        }
+
+        if (docLengths.length != questionIds.length || in.hasRemaining()) {
+            throw new IllegalStateException("索引快照数据与题目数量不一致");
+        }
+        return new QuestionIndex(questionIds, docLengths, termKeys, postingDocs, postingFreqs,
+                segmenter, categoryPartitions, typePartitions, fingerprintMatcher, numericPostings);
+    }
+
+    /**
+     * 索引中的题目数量
+     */
+    public int size() {
+        return questionIds.length;
+    }
+
+    /**
+     * 索引中的全部类别
+     * @return 类别列表（按名称排序，不含空类别）
+     */
+    public List<String> getCategories() {
+        List<String> categories = new ArrayList<>();
+        for (String category : categoryPartitions.keySet()) {
+            if (!category.isEmpty()) {
+                categories.add(category);
+            }
+        }
+        Collections.sort(categories);
+        return categories;
+    }
+
+    /**
+     * 获取由题库词表构建的分词器
+     */
+    public DictionarySegmenter getSegmenter() {
+        return segmenter;
+    }
+
+    /**
+     * 获取题目指纹匹配器
+     */
+    public FingerprintMatcher getFingerprintMatcher() {
+        return fingerprintMatcher;
+    }
+
+    /**
+     * 获取属于指定题型的题目ID集合
+     * @param types 题型，为null或空时表示不限题型
+     * @return 题目ID集合，不限题型时返回null
+     */
+    public IdBitmap idsOfTypes(Set<QuestionBankHelper.QuestionType> types) {
+        if (types == null || types.isEmpty()) {
+            return null;
+        }
+        IdBitmap ids = new IdBitmap();
+        for (QuestionBankHelper.QuestionType type : types) {
+            BitSet docs = typePartitions.get(type);
+            if (docs == null) {
+                continue;
+            }
+            for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1)) {
+                ids.add(questionIds[doc]);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 通过数字特征倒排表统计题目与查询数字特征的命中数
+     * @param numericTokens 查询中的数字特征
+     * @return 题目ID -> 命中的特征数（不含未命中的题目）
+     */
+    public Map<Integer, Integer> numericMatches(List<String> numericTokens) {
+        Map<Integer, Integer> matches = new HashMap<>();
+        for (String numericToken : numericTokens) {
+            int[] docs = numericPostings.get(numericToken);
+            if (docs == null) {
+                continue;
+            }
+            for (int doc : docs) {
+                Integer count = matches.get(questionIds[doc]);
+                matches.put(questionIds[doc], count == null ? 1 : count + 1);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * 使用BM25检索与查询文本共享二元组的题目
+     * @param normalizedQuery 归一化后的查询文本
+     * @param topK 返回的最大结果数
+     * @return 按得分降序排列的命中结果
+     */
+    public List<Hit> search(String normalizedQuery, int topK) {
+        return search(normalizedQuery, topK, null);
+    }
+
+    /**
+     * 在指定类别分区内使用BM25检索题目
+     * @param normalizedQuery 归一化后的查询文本
+     * @param topK 返回的最大结果数
+     * @param category 类别，为null或空时检索全部题目
+     * @return 按得分降序排列的命中结果
+     */
+    public List<Hit> search(String normalizedQuery, int topK, String category) {
+        return search(TextNormalizer.bigrams(normalizedQuery), topK, category);
+    }
+
+    /**
+     * 使用预先计算的查询二元组在指定类别分区内检索题目
+     * @param queryBigrams 查询文本的字符二元组（可包含重复）
+     * @param topK 返回的最大结果数
+     * @param category 类别，为null或空时检索全部题目
+     * @return 按得分降序排列的命中结果
+     */
+    public List<Hit> search(int[] queryBigrams, int topK, String category) {
+        return search(queryBigrams, topK, category, null);
+    }
+
+    /**
+     * 使用预先计算的查询二元组在指定类别和题型分区的交集内检索题目
+     * @param queryBigrams 查询文本的字符二元组（可包含重复）
+     * @param topK 返回的最大结果数
+     * @param category 类别，为null或空时检索全部题目
+     * @param types 题型，为null或空时检索全部题型
+     * @return 按得分降序排列的命中结果，附带每道题覆盖的查询词项比例
+     */
+    public List<Hit> search(int[] queryBigrams, int topK, String category,
+                            Set<QuestionBankHelper.QuestionType> types) {
+        List<Hit> hits = new ArrayList<>();
+        int[] queryTerms = uniqueTerms(queryBigrams);
+        if (queryTerms.length == 0 || questionIds.length == 0 || topK <= 0) {
+            return hits;
+        }
+
+        BitSet partition = null;
+        if (category != null && !category.isEmpty()) {
+            partition = categoryPartitions.get(category);
+            if (partition == null) {
+                return hits;
+            }
+        }
+        if (types != null && !types.isEmpty()) {
+            BitSet typePartition = new BitSet(questionIds.length);
+            for (QuestionBankHelper.QuestionType type : types) {
+                BitSet docs = typePartitions.get(type);
+                if (docs != null) {
+                    typePartition.or(docs);
+                }
+            }
+            if (partition != null) {
+                typePartition.and(partition);
+            }
+            partition = typePartition;
+        }
+
+        // 累加器按题目序号索引，touched记录被命中的序号，避免扫描整个数组
+        float[] accumulator = new float[questionIds.length];
+        int[] matchedTerms = new int[questionIds.length];
+        int[] touched = new int[questionIds.length];
+        int touchedCount = 0;
+
+        for (int queryTerm : queryTerms) {
+            int t = Arrays.binarySearch(termKeys, queryTerm);
+            if (t < 0) {
+                continue;
+            }
+
+            int[] docs = postingDocs[t];
+            int[] freqs = postingFreqs[t];
+            float termIdf = idf[t];
+            for (int i = 0; i < docs.length; i++) {
+                int doc = docs[i];
+                if (partition != null && !partition.get(doc)) {
+                    continue;
+                }
+                float tf = freqs[i];
+                float norm = K1 * (1 - B + B * docLengths[doc] / avgDocLength);
+                if (accumulator[doc] == 0f) {
+                    touched[touchedCount++] = doc;
+                }
+                accumulator[doc] += termIdf * tf * (K1 + 1) / (tf + norm);
+                matchedTerms[doc]++;
+            }
+        }
+
+        // 使用小顶堆保留得分最高的topK个结果
+        PriorityQueue<Hit> heap = new PriorityQueue<>(topK, (a, b) -> Float.compare(a.score, b.score));
+        for (int i = 0; i < touchedCount; i++) {
+            int doc = touched[i];
+            float score = accumulator[doc];
+            float coverage = (float) matchedTerms[doc] / queryTerms.length;
+            if (heap.size() < topK) {
+                heap.offer(new Hit(questionIds[doc], score, coverage));
+            } else if (score > heap.peek().score) {
+                heap.poll();
+                heap.offer(new Hit(questionIds[doc], score, coverage));
+            }
+        }
+
+        hits.addAll(heap);
+        Collections.sort(hits, (a, b) -> Float.compare(b.score, a.score));
+        return hits;
+    }
+
+    /**
+     * 去除重复的查询词项
+     */
+    private static int[] uniqueTerms(int[] terms) {
+        if (terms.length == 0) {
+            return terms;
+        }
+        int[] sorted = terms.clone();
+        Arrays.sort(sorted);
+        int count = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] != sorted[count - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, count);
+    }
+
+    /**
+     * 检索命中结果
+     */
+    public static class Hit {
+        public final int questionId;
+        public final float score;
+        // 题目包含的查询词项占全部查询词项的比例
+        public final float coverage;
+
+        Hit(int questionId, float score, float coverage) {
+            this.questionId = questionId;
+            this.score = score;
+            this.coverage = coverage;
+        }
+    }
+
+    /**
+     * 可增长的int数组，构建倒排表时避免装箱
+     */
+    static class IntList {
+        private int[] values = new int[8];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.floatingocrquiz;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 多题截图分割器
+ * 截图范围覆盖多道题目时，按题号、题型标题和选项块结束位置把OCR结果拆分成多道题目，
+ * 每道题目可以独立匹配。
+ */
+public final class QuestionSegmenter {
+
+    // 题号，如"12."、"12、"、"12："
+    private static final Pattern QUESTION_NUMBER = Pattern.compile("^\\d{1,3}\\s*[.．、:：]");
+    // 题型标题，如"一、单选题"、"多项选择题（共10题）"
+    private static final Pattern TYPE_HEADER = Pattern.compile(
+            "^(?:[一二三四五六七八九十]+\\s*[、.．]\\s*)?(?:单选题|多选题|判断题|简答题|填空题|单项选择题|多项选择题)");
+    // 选项行，如"A."、"A、"、"A)"、"（A）"
+    private static final Pattern OPTION_LINE = Pattern.compile(
+            "^(?:[A-Ga-g]\\s*[.．、)）]|[（(【\\[][A-Ga-g][）)】\\]])");
+    // 题干特征：空括号、问号或下划线填空
+    private static final Pattern STEM_CUE = Pattern.compile("[（(]\\s*[）)]|[？?]|_{2,}");
+
+    // 可以作为新题目开头的最短行长度（选项通常较短）
+    private static final int MIN_STEM_LINE_LENGTH = 10;
+    // 单独成行时视为纯标题而丢弃的最大长度
+    private static final int MAX_HEADER_LENGTH = 16;
+    // 有效题目文本的最短长度
+    private static final int MIN_SEGMENT_LENGTH = 6;
+
+    private QuestionSegmenter() {
+    }
+
+    /**
+     * 将OCR识别结果拆分为多道题目
+     * @param ocrText OCR识别结果（按行以换行符分隔）
+     * @return 各题目的文本（已去掉开头的题号）及其所属的题型标题，无法拆分时只包含一个元素
+     */
+    public static List<Segment> split(String ocrText) {
+        List<Segment> segments = new ArrayList<>();
+        if (ocrText == null || ocrText.trim().isEmpty()) {
+            return segments;
+        }
+
+        StringBuilder current = new StringBuilder();
+        boolean currentHasOptions = false;
+        // 最近一次出现的题型标题，作为之后各题目的题型提示
+        String typeHeader = null;
+        for (String line : ocrText.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+
+            // 题型标题总是新题目的开始，单独成行的标题本身不参与匹配，但保留为后续题目的题型提示
+            Matcher header = TYPE_HEADER.matcher(trimmed);
+            if (header.find()) {
+                flush(segments, current, typeHeader);
+                typeHeader = header.group();
+                currentHasOptions = false;
+                if (trimmed.length() > MAX_HEADER_LENGTH) {
+                    current.append(trimmed).append('\n');
+                }
+                continue;
+            }
+
+            boolean isOption = OPTION_LINE.matcher(trimmed).find();
+            if (current.length() > 0 && !isOption) {
+                boolean numbered = QUESTION_NUMBER.matcher(trimmed).find();
+                boolean longLine = trimmed.length() >= MIN_STEM_LINE_LENGTH;
+                // 带题号的行：已经出现过选项块，或者行足够长（不是数字编号的短选项）
+                boolean numberedStart = numbered && (currentHasOptions || longLine);
+                // 无题号的行：选项块之后出现带题干特征的长行，说明选项块已经结束
+                boolean afterOptionBlock = currentHasOptions && longLine && STEM_CUE.matcher(trimmed).find();
+                if (numberedStart || afterOptionBlock) {
+                    flush(segments, current, typeHeader);
+                    currentHasOptions = false;
+                }
+            }
+
+            // 去掉题目开头的题号，避免题号被当作数字选项标记而截断题干
+            if (current.length() == 0 && !isOption) {
+                trimmed = QUESTION_NUMBER.matcher(trimmed).replaceFirst("").trim();
+            }
+            current.append(trimmed).append('\n');
+            if (isOption) {
+                currentHasOptions = true;
+            }
+        }
+        flush(segments, current, typeHeader);
+
+        // 拆分后没有有效题目时退回到整段文本
+        if (segments.isEmpty()) {
+            segments.add(new Segment(ocrText, typeHeader));
+        }
+        return segments;
+    }
+
+    private static void flush(List<Segment> segments, StringBuilder current, String typeHeader) {
+        String segment = current.toString().trim();
+        current.setLength(0);
+        if (segment.length() >= MIN_SEGMENT_LENGTH) {
+            segments.add(new Segment(segment, typeHeader));
+        }
+    }
+
+    /**
+     * 拆分出的单道题目
+     */
+    public static final class Segment {
+        // 题目文本
+        public final String text;
+        // 题目之前最近的题型标题（如"一、单选题"），没有时为null
+        public final String typeHeader;
+
+        Segment(String text, String typeHeader) {
+            this.text = text;
+            this.typeHeader = typeHeader;
+        }
+    }
+}
@@ -42,6 +42,7 @@ import androidx.annotation.Nullable;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -65,6 +66,9 @@ public class ScreenCaptureService extends Service {
     private static final String PREF_DEFAULT_RECT = "defaultRect";
     private static final String EXTRA_SETTING_DEFAULT_RANGE = "SETTING_DEFAULT_RANGE";
     
+    // OCR识别完成后题库匹配的时间预算（毫秒），超时后先显示当前最佳结果，完整结果随后更新
+    private static final long MATCH_LATENCY_BUDGET_MS = 1500;
+    
     // 是否正在设置默认截图范围
     private boolean isSettingDefaultRange = false;
 
@@ -541,7 +545,8 @@ public class ScreenCaptureService extends Service {
                 OCRHelper ocrHelper = OCRHelper.getInstance(this);
                 String recognizedText = ocrHelper.recognizeText(selectedBitmap);
 
-                String displayText;
+                // 待显示的内容：查询成功时为每道题目的答案，否则为一条提示
+                ArrayList<String> displayAnswers = new ArrayList<>();
                 if (!recognizedText.isEmpty()) {
                     // 显示识别到的文字（调试用）
                     Log.d(TAG, "OCR识别到的文字: " + recognizedText);
@@ -550,27 +555,43 @@ public class ScreenCaptureService extends Service {
                     if (recognizedText.startsWith("[ERROR]")) {
                         // OCR识别失败
                         Log.e(TAG, "OCR识别失败: " + recognizedText);
-                        displayText = "处理图片失败，请重新截图";
+                        displayAnswers.add("处理图片失败，请重新截图");
                     } else {
                         // 使用QuestionBankHelper查询题库
                         QuestionBankHelper questionBankHelper = QuestionBankHelper.getInstance(this);
-                        Log.d(TAG, "开始查询题库");
-                        String answer = questionBankHelper.queryAnswer(recognizedText);
-                        Log.d(TAG, "题库查询结果: " + answer);
+                        // 截止时间从OCR返回后开始计算，不受网络识别耗时影响
+                        MatchDeadline deadline = MatchDeadline.after(MATCH_LATENCY_BUDGET_MS);
+                        QuestionBankHelper.AnswerResult result = questionBankHelper.queryAnswer(recognizedText, deadline);
+                        Log.d(TAG, "题库查询结果: " + result.answers + (result.partial ? "（不完整）" : ""));
+                        
+                        if (result.partial) {
+                            // 超过时间预算：先在时间预算内更新浮动窗口，再不限时完整匹配一次
+                            // 已找到题目时显示当前最佳结果，否则（题库仍在加载或尚无候选）显示正在匹配
+                            Intent partialIntent = new Intent(FloatingWindowService.ACTION_UPDATE_ANSWER);
+                            if (result.matched) {
+                                partialIntent.putStringArrayListExtra(FloatingWindowService.EXTRA_ANSWERS, new ArrayList<>(result.answers));
+                                partialIntent.putExtra(FloatingWindowService.EXTRA_PARTIAL, true);
+                            } else {
+                                partialIntent.putExtra(FloatingWindowService.EXTRA_ANSWER, "正在匹配题库，请稍候…");
+                            }
+                            LocalBroadcastManager.getInstance(this).sendBroadcast(partialIntent);
+                            Log.d(TAG, "已发送初步结果，开始完整匹配");
+                            result = questionBankHelper.queryAnswer(recognizedText, MatchDeadline.none());
+                        }
                         
                         // 只显示答案，不显示OCR识别结果（注释掉调试用的OCR文字显示）
-                        displayText = answer;
+                        displayAnswers.addAll(result.answers);
                     }
                 } else {
                     // OCR识别失败或没有识别到文字
                     Log.e(TAG, "OCR识别失败或没有识别到文字");
-                    displayText = "无法识别文字，请重新截图";
+                    displayAnswers.add("无法识别文字，请重新截图");
                 }
 
                 // 更新浮动窗口显示识别结果
-                Log.d(TAG, "准备更新浮动窗口，显示内容: " + displayText);
+                Log.d(TAG, "准备更新浮动窗口，显示内容: " + displayAnswers);
                 Intent intent = new Intent(FloatingWindowService.ACTION_UPDATE_ANSWER);
-                intent.putExtra(FloatingWindowService.EXTRA_ANSWER, displayText);
+                intent.putStringArrayListExtra(FloatingWindowService.EXTRA_ANSWERS, displayAnswers);
                 LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
                 Log.d(TAG, "浮动窗口更新广播已发送");
             } catch (Exception e) {
@@ -768,6 +789,16 @@ public class ScreenCaptureService extends Service {
         if (executorService != null) {
             executorService.shutdown();
         }
+        
+        // 写入缓冲中的查询记录，进程随后可能被系统回收
+        QuestionBankHelper.getInstance(this).closeCaptureHistory();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // 内存紧张时进程可能随后被回收，立即写入缓冲中的查询记录
+        QuestionBankHelper.getInstance(this).flushCaptureHistory();
     }
 
     @Nullable
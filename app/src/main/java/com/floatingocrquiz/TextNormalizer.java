@@ -0,0 +1,80 @@
+package com.floatingocrquiz;
+
+/**
+ * 题干文本归一化工具
+ * 题库索引和OCR查询两侧共用同一套规则，保证二元组（bigram）可以直接对齐
+ */
+public final class TextNormalizer {
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * 归一化文本：全角字母数字转半角、转小写，只保留文字和数字
+     * @param text 原始文本
+     * @return 归一化后的文本，输入为null时返回空字符串
+     */
+    public static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            // 全角ASCII字符（！到～）转换为半角
+            if (c >= '！' && c <= '～') {
+                c = (char) (c - 0xFEE0);
+            }
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 将归一化文本拆分为重叠的二元组，每个二元组的两个字符打包成一个int
+     * @param normalized 归一化后的文本
+     * @return 二元组编码数组（按出现顺序，可能重复）
+     */
+    public static int[] bigrams(String normalized) {
+        if (normalized == null || normalized.length() < 2) {
+            return new int[0];
+        }
+
+        int[] terms = new int[normalized.length() - 1];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = bigramKey(normalized.charAt(i), normalized.charAt(i + 1));
+        }
+        return terms;
+    }
+
+    /**
+     * 将归一化文本拆分为以空格分隔的重叠二元组文本，供全文索引的默认分词器按词切分中文，
+     * 如"工作票"拆分为"工作 作票"；不足两个字符时原样返回
+     * @param normalized 归一化后的文本
+     * @return 二元组文本
+     */
+    public static String bigramText(String normalized) {
+        if (normalized == null || normalized.length() < 2) {
+            return normalized == null ? "" : normalized;
+        }
+
+        StringBuilder sb = new StringBuilder(normalized.length() * 3);
+        for (int i = 0; i + 1 < normalized.length(); i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(normalized, i, i + 2);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 两个字符打包为二元组编码
+     */
+    public static int bigramKey(char first, char second) {
+        return (first << 16) | second;
+    }
+}